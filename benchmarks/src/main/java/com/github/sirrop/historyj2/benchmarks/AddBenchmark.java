@@ -0,0 +1,49 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import com.github.sirrop.historyj2.BinaryHistory;
+import com.github.sirrop.historyj2.LinkedHistory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code add}. Once a history is full every add also evicts the oldest element,
+ * so small capacities measure eviction as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AddBenchmark {
+    @Param({"10", "100", "1000"})
+    public int capacity;
+
+    @Param({"16", "1024", "16384"})
+    public int bytes;
+
+    private LinkedHistory<FieldMock> linked;
+    private BinaryHistory binary;
+    private FieldMock mock;
+    private int value;
+
+    @Setup
+    public void setUp() {
+        linked = new LinkedHistory<>(capacity);
+        binary = new BinaryHistory(capacity);
+        mock = new FieldMock(bytes);
+    }
+
+    @Benchmark
+    public void linkedHistory() {
+        mock.setValue(value++);
+        linked.add(mock.copy());
+    }
+
+    @Benchmark
+    public void binaryHistory() {
+        mock.setValue(value++);
+        binary.add(mock);
+    }
+}
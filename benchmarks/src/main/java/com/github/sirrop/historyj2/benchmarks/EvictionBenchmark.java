@@ -0,0 +1,66 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import com.github.sirrop.historyj2.BinaryHistory;
+import com.github.sirrop.historyj2.LinkedHistory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Workloads that keep discarding elements: adding after an undo, which drops the redo
+ * elements, and adding to a {@link BinaryHistory} limited by a byte budget.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvictionBenchmark {
+    @Param({"10", "1000"})
+    public int capacity;
+
+    @Param({"1024"})
+    public int bytes;
+
+    private LinkedHistory<FieldMock> linked;
+    private BinaryHistory binary;
+    private BinaryHistory budgeted;
+    private FieldMock mock;
+    private int value;
+
+    @Setup
+    public void setUp() {
+        linked = new LinkedHistory<>(capacity);
+        binary = new BinaryHistory(capacity);
+        budgeted = new BinaryHistory(capacity);
+        mock = new FieldMock(bytes);
+        budgeted.setByteBudget(bytes * 4L);
+        for (int i = 0; i < capacity; i++) {
+            mock.setValue(i);
+            linked.add(mock.copy());
+            binary.add(mock);
+            budgeted.add(mock);
+        }
+    }
+
+    @Benchmark
+    public void linkedAddAfterUndo() {
+        linked.undo();
+        mock.setValue(value++);
+        linked.add(mock.copy());
+    }
+
+    @Benchmark
+    public void binaryAddAfterUndo() {
+        binary.undo();
+        mock.setValue(value++);
+        binary.add(mock);
+    }
+
+    @Benchmark
+    public void binaryByteBudget() {
+        mock.setValue(value++);
+        budgeted.add(mock);
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A {@link Serializable} object restored by copying its fields.
+ */
+public class FieldMock implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private int value;
+    private int[] payload;
+
+    public FieldMock(int bytes) {
+        payload = new int[Math.max(1, bytes / Integer.BYTES)];
+    }
+
+    public void setValue(int value) {
+        this.value = value;
+        payload[value & (payload.length - 1)] = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public FieldMock copy() {
+        FieldMock result = new FieldMock(0);
+        result.value = value;
+        result.payload = Arrays.copyOf(payload, payload.length);
+        return result;
+    }
+}
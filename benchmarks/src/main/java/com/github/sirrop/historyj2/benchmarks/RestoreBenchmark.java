@@ -0,0 +1,51 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import com.github.sirrop.historyj2.BinaryHistory;
+import com.github.sirrop.historyj2.annotation.History;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of restoring an object in {@link BinaryHistory}, comparing a {@link History.Update}
+ * method with the default field copy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RestoreBenchmark {
+    @Param({"16", "1024", "16384"})
+    public int bytes;
+
+    private BinaryHistory fieldCopy;
+    private BinaryHistory update;
+
+    @Setup
+    public void setUp() {
+        fieldCopy = new BinaryHistory(10);
+        update = new BinaryHistory(10);
+        FieldMock fieldMock = new FieldMock(bytes);
+        UpdateMock updateMock = new UpdateMock(bytes);
+        for (int i = 0; i < 2; i++) {
+            fieldMock.setValue(i);
+            fieldCopy.add(fieldMock);
+            updateMock.setValue(i);
+            update.add(updateMock);
+        }
+    }
+
+    @Benchmark
+    public Object fieldCopy() {
+        fieldCopy.undo();
+        return fieldCopy.redo();
+    }
+
+    @Benchmark
+    public Object updateMethod() {
+        update.undo();
+        return update.redo();
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import com.github.sirrop.historyj2.BinaryHistory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scrubbing a timeline: one {@code undo} or {@code redo} followed by
+ * some work on the caller thread, such as repainting the restored state.
+ * {@code think = 0} is a tight loop that leaves no time for prefetching.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScrubBenchmark {
+    private static final int CAPACITY = 100;
+
+    @Param({"1024", "16384"})
+    public int bytes;
+
+    @Param({"0", "20000"})
+    public int think;
+
+    private BinaryHistory plain;
+    private BinaryHistory cached;
+    private ExecutorService prefetcher;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        plain = new BinaryHistory(CAPACITY);
+        cached = new BinaryHistory(CAPACITY);
+        prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cached.enableStateCache(4, 1, prefetcher);
+        FieldMock plainMock = new FieldMock(bytes);
+        FieldMock cachedMock = new FieldMock(bytes);
+        for (int i = 0; i < CAPACITY; i++) {
+            plainMock.setValue(i);
+            cachedMock.setValue(i);
+            plain.add(plainMock);
+            cached.add(cachedMock);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        prefetcher.shutdownNow();
+    }
+
+    @Benchmark
+    public Object binaryHistory() {
+        return scrub(plain);
+    }
+
+    @Benchmark
+    public Object binaryHistoryStateCache() {
+        return scrub(cached);
+    }
+
+    /**
+     * Moves back and forth between the last ten elements.
+     */
+    private Object scrub(BinaryHistory history) {
+        Object result = step++ % 20 < 10 ? history.undo() : history.redo();
+        Blackhole.consumeCPU(think);
+        return result;
+    }
+}
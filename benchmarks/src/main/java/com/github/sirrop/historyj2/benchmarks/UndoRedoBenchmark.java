@@ -0,0 +1,51 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import com.github.sirrop.historyj2.BinaryHistory;
+import com.github.sirrop.historyj2.LinkedHistory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one {@code undo} followed by one {@code redo} in a full history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UndoRedoBenchmark {
+    @Param({"10", "100", "1000"})
+    public int capacity;
+
+    @Param({"16", "1024", "16384"})
+    public int bytes;
+
+    private LinkedHistory<FieldMock> linked;
+    private BinaryHistory binary;
+
+    @Setup
+    public void setUp() {
+        linked = new LinkedHistory<>(capacity);
+        binary = new BinaryHistory(capacity);
+        FieldMock mock = new FieldMock(bytes);
+        for (int i = 0; i < capacity; i++) {
+            mock.setValue(i);
+            linked.add(mock.copy());
+            binary.add(mock);
+        }
+    }
+
+    @Benchmark
+    public Object linkedHistory() {
+        linked.undo();
+        return linked.redo();
+    }
+
+    @Benchmark
+    public Object binaryHistory() {
+        binary.undo();
+        return binary.redo();
+    }
+}
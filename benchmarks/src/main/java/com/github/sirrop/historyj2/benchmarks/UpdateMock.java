@@ -0,0 +1,36 @@
+package com.github.sirrop.historyj2.benchmarks;
+
+import com.github.sirrop.historyj2.annotation.History;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * A {@link Serializable} object restored by a {@link History.Update} method.
+ */
+public class UpdateMock implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private int value;
+    private int[] payload;
+
+    public UpdateMock(int bytes) {
+        payload = new int[Math.max(1, bytes / Integer.BYTES)];
+    }
+
+    public void setValue(int value) {
+        this.value = value;
+        payload[value & (payload.length - 1)] = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @History.Update
+    private void updateObject(UpdateMock object) {
+        value = object.value;
+        payload = object.payload;
+    }
+}
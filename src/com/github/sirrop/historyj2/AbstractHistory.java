@@ -1,8 +1,99 @@
 package com.github.sirrop.historyj2;
 
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Optional;
 
 public abstract class AbstractHistory<R> implements History<R> {
+    private static final HistoryListener[] NO_LISTENERS = new HistoryListener[0];
+
+    private HistoryListener[] listeners = NO_LISTENERS;
+
+    /**
+     * Registers a listener that receives the operations performed on this history.
+     * <p>
+     *     While no listener is registered, firing an event is a loop over an empty array
+     *     and no timing is taken.
+     * </p>
+     * @param listener the listener to be registered
+     * @exception NullPointerException if the argument is null
+     */
+    public void addListener(HistoryListener listener) {
+        Objects.requireNonNull(listener);
+        HistoryListener[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+        listeners = result;
+    }
+
+    /**
+     * Removes a listener registered by {@link #addListener(HistoryListener)}.
+     * Does nothing if the listener is not registered.
+     * @param listener the listener to be removed
+     */
+    public void removeListener(HistoryListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                HistoryListener[] result = new HistoryListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, result.length - i);
+                listeners = result.length == 0 ? NO_LISTENERS : result;
+                return;
+            }
+        }
+    }
+
+    boolean hasListeners() {
+        return listeners.length != 0;
+    }
+
+    void fireAdd() {
+        for (HistoryListener listener: listeners) {
+            listener.onAdd(this);
+        }
+    }
+
+    void fireUndo() {
+        for (HistoryListener listener: listeners) {
+            listener.onUndo(this);
+        }
+    }
+
+    void fireRedo() {
+        for (HistoryListener listener: listeners) {
+            listener.onRedo(this);
+        }
+    }
+
+    void fireJump() {
+        for (HistoryListener listener: listeners) {
+            listener.onJump(this);
+        }
+    }
+
+    void fireEvict() {
+        for (HistoryListener listener: listeners) {
+            listener.onEvict(this);
+        }
+    }
+
+    void fireClear() {
+        for (HistoryListener listener: listeners) {
+            listener.onClear(this);
+        }
+    }
+
+    void fireSerialize(int bytes, long nanos) {
+        for (HistoryListener listener: listeners) {
+            listener.onSerialize(this, bytes, nanos);
+        }
+    }
+
+    void fireRestore(long nanos) {
+        for (HistoryListener listener: listeners) {
+            listener.onRestore(this, nanos);
+        }
+    }
+
     @Override
     public boolean canUndo() {
         return currentIndex() > 0;
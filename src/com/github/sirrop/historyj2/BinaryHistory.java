@@ -3,9 +3,26 @@ package com.github.sirrop.historyj2;
 import com.github.sirrop.historyj2.annotation.History;
 
 import java.io.*;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 直列化を使用した履歴オブジェクトです。直列化可能なオブジェクトしか登録できない代わりに、
@@ -16,18 +33,208 @@ import java.lang.reflect.Method;
  *     デフォルトではフィールドに直接代入を行います。直接代入したくない場合は、
  *     {@link History.Update}を付与した、自身と同じ型を引数にとるメソッドを定義することで
  *     更新処理をそのメソッドに委譲することが出来ます。
+ *     代入するフィールドと呼び出すメソッドはクラスごとに一度だけ調べられ、
+ *     スーパークラスで宣言されたフィールドも対象になります。
+ * </p>
+ * <p>
+ *     直列化の形式は{@link SnapshotCodecs}でクラスごとに変更することが出来ます。
+ *     指定しない場合、{@link Externalizable}を実装したクラスはクラス記述子を含まない形式で、
+ *     それ以外のクラスは{@link ObjectOutputStream}で直列化されます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#setKeyframeInterval(int)}に2以上を指定すると、同じオブジェクトの
+ *     連続した直列化結果を直前の状態との差分として保持します。差分は指定した間隔ごとに
+ *     完全な直列化結果(キーフレーム)を挟み、復元時は直近のキーフレームから順に差分を適用します。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#setByteBudget(long)}を指定すると、保持している直列化結果の合計が
+ *     指定したバイト数を超えた時点で古い要素から破棄します。容量による制限も同時に適用されます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#setArena(SnapshotArena)}を指定すると、直列化結果をヒープ外に保持します。
+ *     ヒープ上には要素ごとの小さな管理情報だけが残り、破棄された要素の領域はその場で解放されます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#setCompressor(SnapshotCompressor, int)}を指定すると、直列化結果を
+ *     圧縮して保持します。圧縮した要素は復元する際に展開されます。最初に追加された要素の
+ *     直列化結果から辞書を作り、以降の要素の圧縮に使用することも出来ます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#setSnapshotStore(SnapshotStore)}を指定すると、内容が同じ直列化結果を
+ *     一つの配列にまとめて保持します。{@link SnapshotStore}は複数の履歴で共有することが出来ます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#enableAsyncCapture(Executor, int, UnaryOperator)}を呼び出すと、
+ *     {@link BinaryHistory#add(Serializable)}は複製を渡すだけで戻り、直列化は指定した
+ *     {@link Executor}で行われます。{@link BinaryHistory#undo()}, {@link BinaryHistory#redo()}は
+ *     直列化の完了を待ってから復元します。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#batch()}または{@link BinaryHistory#beginCompound()}から
+ *     {@link BinaryHistory#endCompound()}までに追加されたオブジェクトは、終了時の状態だけが
+ *     一つの要素として追加されます。{@link BinaryHistory#setCoalescingWindow(Duration)}を指定すると、
+ *     最後の要素が追加されてから指定した時間内に同じオブジェクトが追加された場合、
+ *     新しい要素を追加せずに最後の要素を置き換えます。置き換えた場合も追加のイベントが発生します。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#attachJournal(HistoryJournal, Serializable)}で{@link HistoryJournal}を
+ *     指定すると、履歴の変更をファイルに記録します。再起動後に同じジャーナルを指定すると、
+ *     記録された要素は直列化結果を読み込まずにファイル上の位置だけで復元されます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#addListener(HistoryListener)}で登録したリスナーには、履歴の操作に加えて
+ *     直列化と復元にかかった時間が通知されます。リスナーが登録されていない場合、時間は計測しません。
+ *     {@link HistoryMetrics}を登録すると、これらを集計した値を取得出来ます。
+ * </p>
+ * <p>
+ *     {@link BinaryHistory#enableStateCache(int, int, Executor)}を呼び出すと、現在の要素の前後の要素を
+ *     別のスレッドで前もって読み込みます。行き来する操作では、元に戻す際に状態の書き戻しだけが行われます。
  * </p>
  */
 public class BinaryHistory extends AbstractHistory<Serializable> {
+    /**
+     * {@link BinaryHistory#batch()}で開始した複合操作です。
+     * {@link #close()}で終了し、追加されたオブジェクトの最終的な状態を一つの要素として追加します。
+     */
+    public interface Compound extends AutoCloseable {
+        @Override
+        void close();
+    }
+
     private static class Record {
         public Serializable ref;
+        /** ヒープ上に保持する直列化結果 */
         public byte[] data;
+        /** ヒープ外に保持する直列化結果 */
+        public SnapshotArena.Block block;
+        /** dataが差分の場合の基準。キーフレームの場合はnullです。 */
+        public Record base;
+        /** 直近のキーフレームからの距離 */
+        public int depth;
+        /** 非同期の直列化が完了していない場合の結果 */
+        public CompletableFuture<Capture> pending;
+        /** 非同期の直列化に失敗した場合の原因 */
+        public Throwable failure;
+        /** 直列化の完了前に破棄された場合はtrue */
+        public boolean released;
+        /** ジャーナル上の連番 */
+        public long seq;
+        /** ジャーナルから復元した場合の直列化結果 */
+        public HistoryJournal.Entry entry;
+        /** dataを圧縮した圧縮器。圧縮していない場合はnullです。 */
+        public SnapshotCompressor compressor;
+        /** dataを登録した領域。登録していない場合はnullです。 */
+        public SnapshotStore store;
+
+        int length() {
+            if (block != null) {
+                return block.length();
+            }
+            if (data != null) {
+                return data.length;
+            }
+            return entry != null ? entry.length() : 0;
+        }
+
+        byte[] bytes() {
+            byte[] result = data;
+            if (block != null) {
+                result = block.toByteArray();
+            } else if (data == null && entry != null) {
+                result = new byte[entry.length()];
+                entry.buffer().get(result);
+            }
+            if (compressor == null) {
+                return result;
+            }
+            try {
+                return compressor.decompress(result);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class Capture {
+        public final byte[] snapshot;
+        public final byte[] stored;
+        /** 直列化にかかった時間 */
+        public final long nanos;
+
+        Capture(byte[] snapshot, byte[] stored, long nanos) {
+            this.snapshot = snapshot;
+            this.stored = stored;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * {@link BinaryHistory#freeze(SnapshotCompressor)}で一つのバイト列にまとめた要素です。
+     */
+    static final class Frozen {
+        private final Serializable[] refs;
+        /** 各要素の直列化結果の終端 */
+        private final int[] ends;
+        private final byte[] blob;
+        private final SnapshotCompressor compressor;
+        /** 非同期の直列化に失敗した要素の原因。失敗した要素がない場合はnullです。 */
+        private final Throwable[] failures;
+        private final int cursor;
+
+        Frozen(Serializable[] refs, int[] ends, byte[] blob, SnapshotCompressor compressor,
+               Throwable[] failures, int cursor) {
+            this.refs = refs;
+            this.ends = ends;
+            this.blob = blob;
+            this.compressor = compressor;
+            this.failures = failures;
+            this.cursor = cursor;
+        }
+
+        /**
+         * まとめたバイト列の長さを返します。
+         */
+        int length() {
+            return blob.length;
+        }
+
+        int size() {
+            return refs.length;
+        }
     }
 
-    private final LinkedHistory<Record> delegate;
+    private final RingHistory<Record> delegate;
+    private final SnapshotCodecs codecs;
+    private int keyframeInterval = 1;
+    private long byteBudget = Long.MAX_VALUE;
+    private long retainedBytes;
+    private SnapshotArena arena;
+    private Record lastRecord;
+    private byte[] lastSnapshot;
+    private final Deque<Record> pendingRecords = new ArrayDeque<>();
+    private Executor captureExecutor;
+    private Semaphore capturePermits;
+    private UnaryOperator<Serializable> captureCopier;
+    private int compoundDepth;
+    private Serializable compoundRecord;
+    private long coalescingWindow;
+    private Record lastAppended;
+    private long lastAppendedNanos;
+    private HistoryJournal journal;
+    private SnapshotCompressor compressor;
+    private SnapshotStore snapshotStore;
+    private List<byte[]> trainingSamples;
+    private int trainingSampleCount;
+    private DecodedStateCache stateCache;
+    private int prefetchDistance;
+
+    public BinaryHistory(int initialCapacity, SnapshotCodecs codecs) {
+        delegate = new RingHistory<>(initialCapacity, this::release, this);
+        this.codecs = Objects.requireNonNull(codecs);
+    }
 
     public BinaryHistory(int initialCapacity) {
-        delegate = new LinkedHistory<>(initialCapacity);
+        this(initialCapacity, new SnapshotCodecs());
     }
 
     public BinaryHistory() {
@@ -36,23 +243,159 @@ public class BinaryHistory extends AbstractHistory<Serializable> {
 
     /**
      * オブジェクトを直列化する際に例外が発生した場合、追加は失敗します。
+     * 非同期に直列化する場合、失敗はその要素を復元する際に{@link IllegalStateException}として通知されます。
      * @param record element to be registered
      * @exception IllegalArgumentException 直列化に失敗した場合、IOExceptionをラップして投げられます
      */
     @Override
     public void add(Serializable record) {
-        Record element;
-        try {
-            element = createRecord(record);
-        } catch (IOException e) {
-           throw new IllegalArgumentException(e);
+        Objects.requireNonNull(record);
+        if (compoundDepth > 0) {
+            if (compoundRecord != null && compoundRecord != record) {
+                append(compoundRecord);
+            }
+            compoundRecord = record;
+            return;
+        }
+        append(record);
+    }
+
+    private void append(Serializable record) {
+        completeCaptures(false);
+        long now = System.nanoTime();
+        Record current = delegate.currentRecord();
+        if (coalescingWindow > 0 && current != null && current == lastAppended && current.ref == record
+                && now - lastAppendedNanos < coalescingWindow) {
+            Record element = new Record();
+            element.ref = record;
+            element.seq = current.seq;
+            if (current.base != null && current.base.failure == null) {
+                element.base = current.base;
+                element.depth = current.depth;
+            }
+            capture(element);
+            delegate.set(delegate.currentIndex(), element);
+            lastAppended = element;
+            trimToBudget();
+            fireAdd();
+            return;
+        }
+        int evicted = delegate.currentIndex() + 2 - delegate.getCapacity();
+        if (evicted > 0 && evicted <= delegate.currentIndex()) {
+            rebase(delegate.get(evicted));
+        }
+        Record element = new Record();
+        element.ref = record;
+        if (journal != null) {
+            element.seq = journal.nextSeq();
         }
+        Record previous = delegate.currentRecord();
+        if (previous != null && previous.ref == record && previous.failure == null
+                && previous.depth + 1 < keyframeInterval && delegate.getCapacity() > 1) {
+            element.base = previous;
+            element.depth = previous.depth + 1;
+        }
+        capture(element);
         delegate.add(element);
+        lastAppended = element;
+        lastAppendedNanos = now;
+        trimToBudget();
+        fireAdd();
+    }
+
+    /**
+     * 複合操作を開始します。複合操作は入れ子にすることが出来ます。
+     */
+    public void beginCompound() {
+        compoundDepth++;
+    }
+
+    /**
+     * 複合操作を終了します。最も外側の複合操作が終了すると、その間に追加された
+     * オブジェクトの現在の状態を一つの要素として追加します。
+     * 複合操作の間に異なるオブジェクトが追加された場合、それまでのオブジェクトはその時点で追加されます。
+     * @exception IllegalStateException 複合操作が開始されていない場合
+     */
+    public void endCompound() {
+        if (compoundDepth == 0) {
+            throw new IllegalStateException("No compound in progress");
+        }
+        compoundDepth--;
+        if (compoundDepth == 0) {
+            flushCompound();
+        }
+    }
+
+    /**
+     * 複合操作を開始します。
+     * <pre>
+     *     try (var compound = history.batch()) {
+     *         ...
+     *     }
+     * </pre>
+     * @return 終了時に{@link #endCompound()}を呼び出すオブジェクト
+     */
+    public Compound batch() {
+        beginCompound();
+        return new Compound() {
+            private boolean closed;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    endCompound();
+                }
+            }
+        };
+    }
+
+    private void flushCompound() {
+        if (compoundRecord != null) {
+            Serializable record = compoundRecord;
+            compoundRecord = null;
+            append(record);
+        }
+    }
+
+    /**
+     * 同じオブジェクトの追加を一つの要素にまとめる時間を返します。
+     * @return 時間。まとめない場合は{@link Duration#ZERO}
+     */
+    public Duration getCoalescingWindow() {
+        return Duration.ofNanos(coalescingWindow);
+    }
+
+    /**
+     * 同じオブジェクトの追加を一つの要素にまとめる時間を変更します。
+     * 要素が追加されてからこの時間内に、元に戻す操作を挟まずに同じオブジェクトが追加された場合、
+     * 最後の要素をその状態で置き換えます。置き換えのたびに直列化は行われ、
+     * {@link HistoryListener#onAdd(History)}が呼び出されます。
+     * @param window 時間。{@link Duration#ZERO}の場合はまとめません
+     * @exception IllegalArgumentException 負の時間が指定された場合
+     */
+    public void setCoalescingWindow(Duration window) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("coalescing window is negative.");
+        }
+        coalescingWindow = window.toNanos();
     }
 
     @Override
     public void clear() {
+        completeCaptures(true);
+        compoundRecord = null;
+        lastAppended = null;
         delegate.clear();
+        if (journal != null) {
+            journal.clear();
+        }
+        lastRecord = null;
+        lastSnapshot = null;
+        if (stateCache != null) {
+            stateCache.clear();
+        }
+        fireClear();
     }
 
     @Override
@@ -77,6 +420,9 @@ public class BinaryHistory extends AbstractHistory<Serializable> {
     @Override
     public void setCapacity(int capacity) {
         delegate.setCapacity(capacity);
+        if (journal != null) {
+            journal.setSegmentCapacity(capacity);
+        }
     }
 
     @Override
@@ -84,77 +430,807 @@ public class BinaryHistory extends AbstractHistory<Serializable> {
         return delegate.size();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     要素は登録に使用したオブジェクトです。直列化結果は{@link #snapshots()}で取得します。
+     * </p>
+     */
+    @Override
+    public Spliterator<Serializable> spliterator() {
+        return new IndexedSpliterator<>(i -> delegate.get(i).ref, 0, delegate.size());
+    }
+
+    /**
+     * 各要素の直列化結果を古い順に返します。直列化結果は復元せずにそのまま返されます。
+     *
+     * <p>
+     *     キーフレームで圧縮していない要素は、保持している配列やヒープ外の領域、ジャーナルのファイルを
+     *     コピーせずに参照する読み込み専用の{@link ByteBuffer}になります。差分や圧縮した要素は
+     *     その要素だけを組み立てたバッファになります。返されたストリームは分割して並列に処理することが出来ます。
+     *     ストリームを使用している間、およびバッファを参照している間は、この履歴を変更してはいけません。
+     * </p>
+     * @return 直列化結果のストリーム
+     * @exception IllegalStateException 非同期の直列化に失敗した要素を読み込んだ場合
+     */
+    public Stream<ByteBuffer> snapshots() {
+        flushCompound();
+        completeCaptures(true);
+        Spliterator<ByteBuffer> spliterator = new IndexedSpliterator<>(i -> bufferOf(delegate.get(i)), 0, delegate.size());
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    private ByteBuffer bufferOf(Record record) {
+        if (record.failure != null) {
+            throw new IllegalStateException("Capture failed", record.failure);
+        }
+        if (record.base == null && record.compressor == null) {
+            if (record.block != null) {
+                return record.block.buffer();
+            }
+            if (record.data == null && record.entry != null) {
+                return record.entry.buffer().asReadOnlyBuffer();
+            }
+        }
+        byte[] data = record.base == null && record.compressor == null ? record.data : snapshotOf(record);
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * 保持する直列化結果の合計の上限を返します。
+     * @return バイト数。上限がない場合は{@link Long#MAX_VALUE}
+     */
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * 保持する直列化結果の合計の上限を変更します。上限を超えている場合、
+     * 現在の要素より前の要素を古いものから破棄します。
+     * 最後に追加された要素は上限を超えていても保持されます。
+     * @param byteBudget バイト数。{@link Long#MAX_VALUE}の場合は上限なし
+     * @exception IllegalArgumentException 0以下の値が指定された場合
+     */
+    public void setByteBudget(long byteBudget) {
+        if (byteBudget <= 0) {
+            throw new IllegalArgumentException("byte budget is negative or zero.");
+        }
+        this.byteBudget = byteBudget;
+        trimToBudget();
+    }
+
+    /**
+     * 保持している直列化結果の合計を返します。
+     * @return バイト数
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * 直列化結果を保持するヒープ外の領域を返します。
+     * @return 領域。ヒープ上に保持する場合はnull
+     */
+    public SnapshotArena getArena() {
+        return arena;
+    }
+
+    /**
+     * 直列化結果を保持するヒープ外の領域を変更します。変更は以降に追加される要素に適用されます。
+     * @param arena 領域。nullの場合はヒープ上に保持します
+     */
+    public void setArena(SnapshotArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * 以降に追加される要素の直列化を指定した{@link Executor}で行うようにします。
+     *
+     * <p>
+     *     {@link #add(Serializable)}はcopierで作った複製を渡してすぐに戻ります。直列化を待っている
+     *     要素がmaxPendingに達している場合は、いずれかの直列化が完了するまで待ちます。
+     *     copierに{@link UnaryOperator#identity()}を指定すると複製せずに渡しますが、
+     *     その場合は直列化が完了するまでオブジェクトを変更してはいけません。
+     * </p>
+     * <p>
+     *     直列化の形式は{@link SnapshotCodecs}に従うため、使用するコーデックはスレッドセーフである必要があります。
+     * </p>
+     * @param executor 直列化を行うExecutor
+     * @param maxPending 直列化を待つ要素の上限
+     * @param copier 登録されたオブジェクトの複製を作る関数
+     * @exception IllegalArgumentException maxPendingが0以下の場合
+     */
+    public void enableAsyncCapture(Executor executor, int maxPending, UnaryOperator<Serializable> copier) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("max pending is negative or zero.");
+        }
+        completeCaptures(true);
+        captureExecutor = Objects.requireNonNull(executor);
+        capturePermits = new Semaphore(maxPending);
+        captureCopier = Objects.requireNonNull(copier);
+    }
+
+    /**
+     * 直列化を待っている要素の完了を待ち、以降に追加される要素を呼び出したスレッドで直列化するようにします。
+     */
+    public void disableAsyncCapture() {
+        completeCaptures(true);
+        captureExecutor = null;
+        capturePermits = null;
+        captureCopier = null;
+    }
+
+    /**
+     * 直列化を待っているすべての要素の完了を待ちます。
+     */
+    public void awaitCapture() {
+        completeCaptures(true);
+    }
+
+    /**
+     * 履歴の変更を記録するジャーナルを指定します。
+     *
+     * <p>
+     *     ジャーナルに要素が記録されている場合、それらの要素をtargetの履歴として復元し、
+     *     targetの状態をジャーナル上の現在の要素の状態に変更します。要素の直列化結果は
+     *     ファイル上の位置だけを保持し、元に戻す際にメモリマップしたファイルから直接読み込みます。
+     *     容量を超える要素は古いものから破棄されます。
+     * </p>
+     * @param journal ジャーナル
+     * @param target 記録された要素を書き戻すオブジェクト。ジャーナルが空の場合はnullでも構いません
+     * @exception IllegalStateException この履歴が空でない場合、または状態の変更に失敗した場合
+     */
+    public void attachJournal(HistoryJournal journal, Serializable target) {
+        flushCompound();
+        completeCaptures(true);
+        if (delegate.size() != 0) {
+            throw new IllegalStateException("History is not empty");
+        }
+        this.journal = Objects.requireNonNull(journal);
+        journal.setSegmentCapacity(getCapacity());
+        if (journal.size() == 0) {
+            return;
+        }
+        Objects.requireNonNull(target);
+        for (int i = 0; i < journal.size(); i++) {
+            Record record = new Record();
+            record.ref = target;
+            record.entry = journal.get(i);
+            record.seq = record.entry.seq;
+            retainedBytes += record.length();
+            delegate.add(record);
+        }
+        int index = Math.max(0, journal.currentIndex() - (journal.size() - delegate.size()));
+        trimJournal();
+        jumpTo(index);
+    }
+
+    /**
+     * 履歴の変更を記録しているジャーナルを返します。
+     * @return ジャーナル。記録していない場合はnull
+     */
+    public HistoryJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 直列化結果をまとめる領域を返します。
+     * @return 領域。まとめない場合はnull
+     */
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * 直列化結果を指定した領域に登録し、内容が同じものを共有します。
+     * 領域を指定している間は{@link #setArena(SnapshotArena)}で指定したヒープ外の領域は使用されません。
+     * 変更は以降に追加される要素に適用されます。
+     * @param snapshotStore 領域。nullの場合はまとめません
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    /**
+     * 直列化結果の圧縮に使用する圧縮器を返します。
+     * @return 圧縮器。圧縮しない場合はnull
+     */
+    public SnapshotCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * 直列化結果を指定した圧縮器で圧縮して保持します。変更は以降に追加される要素に適用されます。
+     *
+     * <p>
+     *     trainingSamplesに1以上を指定すると、以降に追加された要素の直列化結果を指定した数だけ集め、
+     *     {@link SnapshotCompressor#train(List)}で得た圧縮器をそれ以降の要素に使用します。
+     *     クラス記述子やフィールド名のように要素の間で共通する部分が辞書に入るため、小さな要素ほど
+     *     圧縮の効果が大きくなります。
+     * </p>
+     * @param compressor 圧縮器。nullの場合は圧縮しません
+     * @param trainingSamples 辞書の作成に使用する要素の数。0の場合は辞書を作りません
+     * @exception IllegalArgumentException trainingSamplesが負の場合
+     */
+    public void setCompressor(SnapshotCompressor compressor, int trainingSamples) {
+        if (trainingSamples < 0) {
+            throw new IllegalArgumentException("training samples is negative.");
+        }
+        this.compressor = compressor;
+        trainingSampleCount = trainingSamples;
+        this.trainingSamples = compressor != null && trainingSamples > 0 ? new ArrayList<>() : null;
+    }
+
+    /**
+     * 直列化結果を指定した圧縮器で圧縮して保持します。変更は以降に追加される要素に適用されます。
+     * @param compressor 圧縮器。nullの場合は圧縮しません
+     */
+    public void setCompressor(SnapshotCompressor compressor) {
+        setCompressor(compressor, 0);
+    }
+
+    /**
+     * 復元に使用する要素を前もって読み込み、読み込んだ結果を保持します。
+     *
+     * <p>
+     *     {@link #undo()}, {@link #redo()}, {@link #jumpTo(int)}で移動するたびに、移動先の前後
+     *     prefetchDistanceまでの要素の読み込みを指定した{@link Executor}で開始します。
+     *     読み込んだ結果がある要素への移動では、直列化結果を読み込まずに状態の書き戻しだけを行います。
+     *     書き戻したオブジェクトは読み込んだ結果のフィールドを共有するため、結果は一度使うと破棄され、
+     *     次の移動で改めて読み込まれます。前後に行き来する場合、読み込みは常に呼び出したスレッドの外で行われます。
+     * </p>
+     * <p>
+     *     読み込みは複数のスレッドから行われるため、使用するコーデックはスレッドセーフである必要があります。
+     * </p>
+     * @param maxEntries 保持する読み込み結果の上限。超えた場合は最も長く使われていない結果から破棄します
+     * @param prefetchDistance 前もって読み込む要素の、移動先からの距離
+     * @param executor 読み込みを行うExecutor
+     * @exception IllegalArgumentException maxEntriesまたはprefetchDistanceが0以下の場合
+     */
+    public void enableStateCache(int maxEntries, int prefetchDistance, Executor executor) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("max entries is negative or zero.");
+        }
+        if (prefetchDistance <= 0) {
+            throw new IllegalArgumentException("prefetch distance is negative or zero.");
+        }
+        stateCache = new DecodedStateCache(maxEntries, Objects.requireNonNull(executor));
+        this.prefetchDistance = prefetchDistance;
+    }
+
+    /**
+     * 読み込み結果の保持をやめ、保持している結果を破棄します。
+     */
+    public void disableStateCache() {
+        if (stateCache != null) {
+            stateCache.clear();
+        }
+        stateCache = null;
+    }
+
+    /**
+     * 復元した回数のうち、読み込み結果を使用した回数の割合を返します。
+     * @return 0から1までの割合。読み込み結果を保持していない場合、または復元していない場合は0
+     */
+    public double getStateCacheHitRate() {
+        if (stateCache == null) {
+            return 0;
+        }
+        long hits = stateCache.getHitCount();
+        long total = hits + stateCache.getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 復元した回数のうち、読み込み結果を使用した回数を返します。
+     * @return 回数。読み込み結果を保持していない場合は0
+     */
+    public long getStateCacheHitCount() {
+        return stateCache == null ? 0 : stateCache.getHitCount();
+    }
+
+    /**
+     * キーフレームの間隔を返します。
+     * @return キーフレームの間隔
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * キーフレームの間隔を変更します。1の場合はすべての要素をキーフレームとして保持します。
+     * 間隔を大きくするとメモリ使用量が減る代わりに、復元時に適用する差分が増えます。
+     * 変更は以降に追加される要素に適用されます。
+     * @param keyframeInterval キーフレームの間隔
+     * @exception IllegalArgumentException 0以下の値が指定された場合
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("keyframe interval is negative or zero.");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
     @Override
     public Serializable undo() {
+        flushCompound();
         if (!canUndo()) {
             throw new IllegalStateException("Can't undo");
         }
+        lastAppended = null;
+        completeCaptures(true);
         Record record = delegate.undo();
+        moveJournal(record);
+        Serializable result;
         try {
-            return restore(record);
-        } catch (IOException | ClassNotFoundException | IllegalAccessException | InvocationTargetException e) {
+            result = restore(record);
+        } catch (IOException | ClassNotFoundException | InvocationTargetException e) {
             throw new IllegalStateException("Can't undo", e);
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Can't undo", e.getCause());
         }
+        fireUndo();
+        return result;
     }
 
     @Override
     public Serializable redo() {
+        flushCompound();
         if (!canRedo()) {
             throw new IllegalStateException("Can't redo");
         }
+        lastAppended = null;
+        completeCaptures(true);
         Record record = delegate.redo();
+        moveJournal(record);
+        Serializable result;
         try {
-            return restore(record);
-        } catch (IOException | ClassNotFoundException | IllegalAccessException | InvocationTargetException e) {
+            result = restore(record);
+        } catch (IOException | ClassNotFoundException | InvocationTargetException e) {
             throw new IllegalStateException("Can't redo", e);
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Can't redo", e.getCause());
         }
+        fireRedo();
+        return result;
     }
 
-    private static Record createRecord(Serializable serializable) throws IOException {
-        Record result = new Record();
-        result.ref = serializable;
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ObjectOutputStream stream = new ObjectOutputStream(out);
-        stream.writeObject(serializable);
-        stream.close();
-        result.data = out.toByteArray();
-        out.close();
+    /**
+     * 指定した位置の要素に移動し、登録に使用したオブジェクトの状態をその要素の状態に変更します。
+     * 移動する距離に関係なく、復元は一度だけ行われます。
+     * @param index index of the element
+     * @return 状態を変更したオブジェクト
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public Serializable jumpTo(int index) {
+        flushCompound();
+        lastAppended = null;
+        completeCaptures(true);
+        Record record = delegate.jumpTo(index);
+        moveJournal(record);
+        Serializable result;
+        try {
+            result = restore(record);
+        } catch (IOException | ClassNotFoundException | InvocationTargetException e) {
+            throw new IllegalStateException("Can't jump", e);
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException("Can't jump", e.getCause());
+        }
+        fireJump();
         return result;
     }
 
-    private Serializable restore(Record record) throws IOException, ClassNotFoundException, IllegalAccessException, InvocationTargetException {
-        var in = new ByteArrayInputStream(record.data);
-        var stream = new ObjectInputStream(in);
-        Serializable target = record.ref;
-        if (target == null) {
-            throw new IllegalStateException("オブジェクトはすでに破棄されています。");
+    private void capture(Record record) {
+        if (captureExecutor != null) {
+            submitCapture(record);
+            return;
         }
-        Object restored = stream.readObject();
-        var success = updateObjectIfPresent(target, restored);
-        if (success) {
-            return target;
+        try {
+            long start = hasListeners() ? System.nanoTime() : 0;
+            byte[] snapshot = encode(record.ref);
+            byte[] stored = record.base == null ? snapshot : Delta.encode(snapshotOf(record.base), snapshot);
+            record.compressor = compressor;
+            stored = compress(compressor, stored);
+            install(record, snapshot, stored, start == 0 ? 0 : System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
         }
-        Field[] fields = target.getClass().getDeclaredFields();
-        for (Field field: fields) {
-            field.setAccessible(true);
-            field.set(target, field.get(restored));
+    }
+
+    private byte[] encode(Serializable serializable) throws IOException {
+        SnapshotBuffer buffer = SnapshotBuffer.acquire();
+        try {
+            codecOf(serializable).write(serializable, buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
         }
-        return target;
     }
 
-    private boolean updateObjectIfPresent(Serializable target, Object restored) {
-        var result = false;
+    private static byte[] compress(SnapshotCompressor compressor, byte[] data) {
+        return compressor == null ? data : compressor.compress(data);
+    }
+
+    private void install(Record record, byte[] snapshot, byte[] stored, long nanos) {
+        store(record, stored);
+        retainedBytes += record.length();
+        if (journal != null) {
+            journal.put(record.seq, snapshot);
+        }
+        if (trainingSamples != null && record.compressor == compressor) {
+            trainingSamples.add(snapshot);
+            if (trainingSamples.size() >= trainingSampleCount) {
+                compressor = compressor.train(trainingSamples);
+                trainingSamples = null;
+            }
+        }
+        if (keyframeInterval > 1) {
+            lastRecord = record;
+            lastSnapshot = snapshot;
+        }
+        fireSerialize(snapshot.length, nanos);
+    }
+
+    private void submitCapture(Record record) {
+        Semaphore permits = capturePermits;
+        permits.acquireUninterruptibly();
         try {
-            Method[] methods = target.getClass().getDeclaredMethods();
-            for (Method method: methods) {
-                if (method.isAnnotationPresent(History.Update.class)) {
-                    method.setAccessible(true);
-                    method.invoke(target, restored);
-                    result = true;
+            Serializable copy = captureCopier.apply(record.ref);
+            CompletableFuture<byte[]> base;
+            if (record.base == null) {
+                base = CompletableFuture.completedFuture(null);
+            } else if (record.base.pending != null) {
+                base = record.base.pending.thenApply(capture -> capture.snapshot);
+            } else {
+                base = CompletableFuture.completedFuture(snapshotOf(record.base));
+            }
+            SnapshotCompressor compressor = this.compressor;
+            record.compressor = compressor;
+            boolean timed = hasListeners();
+            record.pending = base.thenApplyAsync(baseSnapshot -> {
+                try {
+                    long start = timed ? System.nanoTime() : 0;
+                    byte[] snapshot = encode(copy);
+                    byte[] stored = baseSnapshot == null ? snapshot : Delta.encode(baseSnapshot, snapshot);
+                    stored = compress(compressor, stored);
+                    return new Capture(snapshot, stored, timed ? System.nanoTime() - start : 0);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            }, captureExecutor);
+        } catch (RuntimeException | Error e) {
+            // 直列化を開始できなかった場合、許可を返さなければ同時に行える数が減り続けます
+            permits.release();
+            throw e;
+        }
+        record.pending.whenComplete((capture, e) -> permits.release());
+        pendingRecords.add(record);
+    }
+
+    /**
+     * 非同期の直列化が完了した要素を取り込みます。
+     * @param await trueの場合はすべての要素の完了を待ちます
+     */
+    private void completeCaptures(boolean await) {
+        while (!pendingRecords.isEmpty() && (await || pendingRecords.peek().pending.isDone())) {
+            Record record = pendingRecords.poll();
+            Capture capture;
+            try {
+                capture = record.pending.join();
+            } catch (CompletionException e) {
+                record.failure = e.getCause();
+                continue;
+            } finally {
+                record.pending = null;
+            }
+            if (!record.released) {
+                install(record, capture.snapshot, capture.stored, capture.nanos);
             }
-        } catch (IllegalAccessException | InvocationTargetException ignored) {
         }
+    }
+
+    private void store(Record record, byte[] data) {
+        if (snapshotStore != null) {
+            record.store = snapshotStore;
+            record.data = snapshotStore.intern(data);
+        } else if (arena != null) {
+            record.block = arena.allocate(data);
+        } else {
+            record.data = data;
+        }
+    }
+
+    private void release(Record record) {
+        if (stateCache != null) {
+            stateCache.invalidate(record);
+        }
+        record.released = true;
+        retainedBytes -= record.length();
+        if (record.block != null) {
+            record.block.release();
+            record.block = null;
+        }
+        if (record.store != null) {
+            record.store.release(record.data);
+            record.store = null;
+        }
+    }
+
+    /**
+     * すべての要素の直列化結果を一つのバイト列にまとめ、この履歴を空にします。
+     * 要素ごとの管理情報と配列が一つにまとまり、まとめたバイト列は要素の間で共通する部分ごと
+     * 圧縮されるため、使われていない履歴をこの形で保持するとメモリ使用量が大きく減ります。
+     * リスナーには通知しません。
+     * @param compressor まとめたバイト列の圧縮器。nullの場合は圧縮しません
+     * @return まとめた要素。{@link #thaw(Frozen)}で元に戻します
+     * @exception IllegalStateException ジャーナルを指定している場合
+     */
+    Frozen freeze(SnapshotCompressor compressor) {
+        if (journal != null) {
+            throw new IllegalStateException("A journaled history can't be frozen");
+        }
+        flushCompound();
+        completeCaptures(true);
+        int size = delegate.size();
+        Serializable[] refs = new Serializable[size];
+        int[] ends = new int[size];
+        Throwable[] failures = null;
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        Record previous = null;
+        byte[] previousSnapshot = null;
+        for (int i = 0; i < size; i++) {
+            Record record = delegate.get(i);
+            refs[i] = record.ref;
+            byte[] snapshot = null;
+            if (record.failure != null) {
+                if (failures == null) {
+                    failures = new Throwable[size];
+                }
+                failures[i] = record.failure;
+            } else if (record.base != null && record.base == previous) {
+                snapshot = Delta.apply(previousSnapshot, record.bytes());
+            } else {
+                snapshot = snapshotOf(record);
+            }
+            if (snapshot != null) {
+                blob.writeBytes(snapshot);
+            }
+            ends[i] = blob.size();
+            previous = record;
+            previousSnapshot = snapshot;
+        }
+        Frozen result = new Frozen(refs, ends, compress(compressor, blob.toByteArray()), compressor,
+                failures, delegate.currentIndex());
+        lastAppended = null;
+        delegate.clear();
+        lastRecord = null;
+        lastSnapshot = null;
         return result;
     }
+
+    /**
+     * {@link #freeze(SnapshotCompressor)}でまとめた要素を元に戻します。キーフレームの間隔、圧縮器、
+     * 保持する領域は現在の設定に従います。登録に使用したオブジェクトの状態は変更しません。
+     * @param frozen まとめた要素
+     * @exception IllegalStateException この履歴が空でない場合
+     * @exception UncheckedIOException まとめたバイト列を展開できない場合
+     */
+    void thaw(Frozen frozen) {
+        if (delegate.size() != 0) {
+            throw new IllegalStateException("History is not empty");
+        }
+        byte[] blob;
+        try {
+            blob = frozen.compressor == null ? frozen.blob : frozen.compressor.decompress(frozen.blob);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Record previous = null;
+        byte[] previousSnapshot = null;
+        int start = 0;
+        for (int i = 0; i < frozen.size(); i++) {
+            Record record = new Record();
+            record.ref = frozen.refs[i];
+            byte[] snapshot = null;
+            if (frozen.failures != null && frozen.failures[i] != null) {
+                record.failure = frozen.failures[i];
+            } else {
+                snapshot = Arrays.copyOfRange(blob, start, frozen.ends[i]);
+                byte[] stored = snapshot;
+                if (previousSnapshot != null && previous.ref == record.ref
+                        && previous.depth + 1 < keyframeInterval && delegate.getCapacity() > 1) {
+                    record.base = previous;
+                    record.depth = previous.depth + 1;
+                    stored = Delta.encode(previousSnapshot, snapshot);
+                }
+                record.compressor = compressor;
+                store(record, compress(compressor, stored));
+                retainedBytes += record.length();
+            }
+            start = frozen.ends[i];
+            delegate.add(record);
+            previous = record;
+            previousSnapshot = snapshot;
+        }
+        if (frozen.cursor >= 0) {
+            delegate.jumpTo(frozen.cursor);
+        }
+    }
+
+    /**
+     * 差分の要素をキーフレームに変換します。これより前の要素を破棄する前に呼び出し、
+     * 破棄された要素が基準として参照され続けないようにします。
+     */
+    private void rebase(Record record) {
+        if (record.pending != null) {
+            completeCaptures(true);
+        }
+        if (record.failure != null) {
+            record.base = null;
+        }
+        if (record.base != null) {
+            byte[] data = snapshotOf(record);
+            release(record);
+            record.released = false;
+            record.data = null;
+            record.base = null;
+            record.depth = 0;
+            record.compressor = compressor;
+            store(record, compress(compressor, data));
+            retainedBytes += record.length();
+        }
+    }
+
+    private void trimToBudget() {
+        while (retainedBytes > byteBudget && delegate.currentIndex() > 0) {
+            rebase(delegate.get(1));
+            delegate.removeFirst();
+        }
+        trimJournal();
+    }
+
+    private void trimJournal() {
+        if (journal != null && delegate.size() != 0) {
+            journal.trim(delegate.get(0).seq);
+        }
+    }
+
+    private void moveJournal(Record record) {
+        if (journal != null) {
+            journal.moveTo(record.seq);
+        }
+    }
+
+    /**
+     * 要素の完全な直列化結果を返します。差分の場合は直近のキーフレームから組み立てます。
+     */
+    private byte[] snapshotOf(Record record) {
+        if (record.base == null) {
+            return record.bytes();
+        }
+        if (record == lastRecord) {
+            return lastSnapshot;
+        }
+        Record[] chain = new Record[record.depth + 1];
+        int length = 0;
+        for (Record r = record; r != null; r = r.base) {
+            chain[length++] = r;
+        }
+        byte[] result = chain[length - 1].bytes();
+        for (int i = length - 2; i >= 0; i--) {
+            result = Delta.apply(result, chain[i].bytes());
+        }
+        return result;
+    }
+
+    private InputStream inputOf(Record record) {
+        if (record.base == null && record.compressor != null) {
+            return new ByteArrayInputStream(record.bytes());
+        } else if (record.base == null && record.block != null) {
+            return new ByteBufferInputStream(record.block.buffer());
+        } else if (record.base == null && record.data == null && record.entry != null) {
+            return new ByteBufferInputStream(record.entry.buffer());
+        } else {
+            return new ByteArrayInputStream(snapshotOf(record));
+        }
+    }
+
+    /**
+     * 現在の要素の前後の要素の読み込みを、近い順に元に戻す方向から開始します。読み込みに必要な
+     * バイト列はこのスレッドで集め、展開、差分の適用、読み込みは{@link DecodedStateCache}のExecutorで行います。
+     */
+    private void prefetchNeighbors() {
+        int current = delegate.currentIndex();
+        Map<Object, Callable<Object>> loaders = new LinkedHashMap<>();
+        for (int d = 1; d <= prefetchDistance; d++) {
+            for (int i: new int[] {current - d, current + d}) {
+                if (i < 0 || i >= delegate.size()) {
+                    continue;
+                }
+                Record record = delegate.get(i);
+                if (record.pending != null || record.failure != null || record.released || stateCache.contains(record)) {
+                    continue;
+                }
+                loaders.put(record, loaderOf(record));
+            }
+        }
+        if (!loaders.isEmpty()) {
+            stateCache.prefetch(loaders);
+        }
+    }
+
+    private Callable<Object> loaderOf(Record record) {
+        byte[][] chain;
+        SnapshotCompressor[] compressors;
+        if (record == lastRecord) {
+            chain = new byte[][] {lastSnapshot};
+            compressors = new SnapshotCompressor[1];
+        } else {
+            chain = new byte[record.depth + 1][];
+            compressors = new SnapshotCompressor[record.depth + 1];
+            int n = chain.length;
+            for (Record r = record; r != null; r = r.base) {
+                n--;
+                chain[n] = rawBytes(r);
+                compressors[n] = r.compressor;
+            }
+        }
+        SnapshotCodec<Serializable> codec = codecOf(record.ref);
+        return () -> {
+            byte[] snapshot = expand(chain[0], compressors[0]);
+            for (int k = 1; k < chain.length; k++) {
+                snapshot = Delta.apply(snapshot, expand(chain[k], compressors[k]));
+            }
+            return codec.read(new ByteArrayInputStream(snapshot));
+        };
+    }
+
+    /**
+     * 要素が保持しているバイト列を返します。ヒープ外やファイル上のバイト列は、破棄された後に
+     * 読み込まれないようにコピーします。
+     */
+    private static byte[] rawBytes(Record record) {
+        if (record.block != null) {
+            return record.block.toByteArray();
+        }
+        if (record.data == null && record.entry != null) {
+            byte[] result = new byte[record.entry.length()];
+            record.entry.buffer().get(result);
+            return result;
+        }
+        return record.data;
+    }
+
+    private static byte[] expand(byte[] data, SnapshotCompressor compressor) throws IOException {
+        return compressor == null ? data : compressor.decompress(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Serializable> SnapshotCodec<T> codecOf(T value) {
+        return codecs.forClass((Class<T>) value.getClass());
+    }
+
+    private Serializable restore(Record record) throws IOException, ClassNotFoundException, InvocationTargetException {
+        if (record.failure != null) {
+            throw new IOException(record.failure);
+        }
+        Serializable target = record.ref;
+        if (target == null) {
+            throw new IllegalStateException("オブジェクトはすでに破棄されています。");
+        }
+        long start = hasListeners() ? System.nanoTime() : 0;
+        Object restored = stateCache == null ? null : stateCache.take(record);
+        if (restored == null) {
+            restored = codecOf(target).read(inputOf(record));
+        }
+        RestorePlan.of(target.getClass()).restore(target, restored);
+        if (start != 0) {
+            fireRestore(System.nanoTime() - start);
+        }
+        if (stateCache != null) {
+            prefetchNeighbors();
+        }
+        return target;
+    }
 }
@@ -0,0 +1,258 @@
+package com.github.sirrop.historyj2;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe {@link History} that wraps another history.
+ * <p>
+ *     Writes are serialized by a {@link StampedLock}. After each write the current record,
+ *     current index, size and capacity are copied into fields of this object, so
+ *     {@link #currentRecord()}, {@link #currentIndex()}, {@link #size()}, {@link #canUndo()}
+ *     and {@link #canRedo()} are served by optimistic reads and never block a writer.
+ *     {@link #undoIfCan()} and {@link #redoIfCan()} check and move the cursor atomically.
+ * </p>
+ * <p>
+ *     The wrapped history must not be used directly after it is wrapped.
+ * </p>
+ * <p>
+ *     Listeners are registered with the wrapped history when it is an {@link AbstractHistory},
+ *     so events name the wrapped history and are delivered while the write lock is held.
+ *     Registering a listener on any other wrapped history throws {@link UnsupportedOperationException}.
+ * </p>
+ * @param <R> the type of elements
+ */
+public class ConcurrentHistory<R> extends AbstractHistory<R> {
+    private final History<R> delegate;
+    /** True if the wrapped history reads its elements by moving the cursor */
+    private final boolean movesToRead;
+    private final StampedLock lock = new StampedLock();
+    private R currentRecord;
+    private int currentIndex;
+    private int size;
+    private int capacity;
+
+    public ConcurrentHistory(History<R> delegate) {
+        this.delegate = Objects.requireNonNull(delegate);
+        movesToRead = usesDefaultSpliterator(delegate.getClass());
+        refresh();
+    }
+
+    public ConcurrentHistory(int initialCapacity) {
+        this(new RingHistory<>(initialCapacity));
+    }
+
+    public ConcurrentHistory() {
+        this(100);
+    }
+
+    @Override
+    public void add(R record) {
+        write(() -> {
+            delegate.add(record);
+            return null;
+        });
+    }
+
+    @Override
+    public void clear() {
+        write(() -> {
+            delegate.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public R currentRecord() {
+        long stamp = lock.tryOptimisticRead();
+        R result = currentRecord;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = currentRecord;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int currentIndex() {
+        long stamp = lock.tryOptimisticRead();
+        int result = currentIndex;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = currentIndex;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getCapacity() {
+        long stamp = lock.tryOptimisticRead();
+        int result = capacity;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = capacity;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        write(() -> {
+            delegate.setCapacity(capacity);
+            return null;
+        });
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int result = size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean canRedo() {
+        long stamp = lock.tryOptimisticRead();
+        int index = currentIndex;
+        int size = this.size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                index = currentIndex;
+                size = this.size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return index != -1 && index < size - 1;
+    }
+
+    @Override
+    public R undo() {
+        return write(delegate::undo);
+    }
+
+    @Override
+    public R redo() {
+        return write(delegate::redo);
+    }
+
+    @Override
+    public R undo(int steps) {
+        return write(() -> delegate.undo(steps));
+    }
+
+    @Override
+    public R redo(int steps) {
+        return write(() -> delegate.redo(steps));
+    }
+
+    @Override
+    public R jumpTo(int index) {
+        return write(() -> delegate.jumpTo(index));
+    }
+
+    @Override
+    public Optional<R> undoIfCan() {
+        return write(delegate::undoIfCan);
+    }
+
+    @Override
+    public Optional<R> redoIfCan() {
+        return write(delegate::redoIfCan);
+    }
+
+    /**
+     * Returns a spliterator over a copy of the elements taken under the lock,
+     * so the result is not affected by later writes. The write lock is used instead when the
+     * wrapped history relies on the default {@link History#spliterator()}, which moves the cursor.
+     * @return a spliterator over the copied elements
+     */
+    @Override
+    public Spliterator<R> spliterator() {
+        if (movesToRead) {
+            Object[] elements = write(() -> delegate.stream().toArray());
+            return Spliterators.spliterator(elements, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+        }
+        Object[] elements;
+        long stamp = lock.readLock();
+        try {
+            elements = delegate.stream().toArray();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return Spliterators.spliterator(elements, Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    @Override
+    public void addListener(HistoryListener listener) {
+        write(() -> {
+            listenable().addListener(listener);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeListener(HistoryListener listener) {
+        write(() -> {
+            listenable().removeListener(listener);
+            return null;
+        });
+    }
+
+    private AbstractHistory<R> listenable() {
+        if (!(delegate instanceof AbstractHistory)) {
+            throw new UnsupportedOperationException("The wrapped history does not support listeners");
+        }
+        return (AbstractHistory<R>) delegate;
+    }
+
+    private static boolean usesDefaultSpliterator(Class<?> type) {
+        try {
+            return type.getMethod("spliterator").isDefault();
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private <T> T write(Supplier<T> action) {
+        long stamp = lock.writeLock();
+        try {
+            return action.get();
+        } finally {
+            refresh();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void refresh() {
+        currentRecord = delegate.currentRecord();
+        currentIndex = delegate.currentIndex();
+        size = delegate.size();
+        capacity = delegate.getCapacity();
+    }
+}
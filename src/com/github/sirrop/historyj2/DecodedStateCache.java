@@ -0,0 +1,145 @@
+package com.github.sirrop.historyj2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link BinaryHistory}の要素を読み込んだ結果を保持します。
+ *
+ * <p>
+ *     読み込みは{@link #prefetch(Map)}で指定した{@link Executor}で行われ、
+ *     結果は最近使われた順に指定した数だけ保持されます。{@link #take(Object)}は結果を取り除いて返します。
+ *     書き戻したオブジェクトは読み込んだ結果のフィールドを共有するため、同じ結果を二度使うことはありません。
+ * </p>
+ */
+final class DecodedStateCache {
+    private final int capacity;
+    private final Executor executor;
+    private final Map<Object, Object> states;
+    private final Map<Object, CompletableFuture<Object>> loading = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    DecodedStateCache(int capacity, Executor executor) {
+        this.capacity = capacity;
+        this.executor = executor;
+        states = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > DecodedStateCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 読み込んだ結果を取り除いて返します。読み込みが完了していない場合は待たずにnullを返し、
+     * その読み込みの結果は保持しません。呼び出したスレッドで読み込む方が、他の読み込みの後に
+     * 待たされるより早いためです。
+     * @return 読み込んだ結果。保持していない場合、または読み込みに失敗した場合はnull
+     */
+    synchronized Object take(Object key) {
+        Object state = states.remove(key);
+        if (state == null) {
+            CompletableFuture<Object> future = loading.remove(key);
+            if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+                state = future.join();
+            }
+        }
+        if (state != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return state;
+    }
+
+    /**
+     * 結果を保持しているか、読み込み中であるかを返します。
+     */
+    synchronized boolean contains(Object key) {
+        return states.containsKey(key) || loading.containsKey(key);
+    }
+
+    /**
+     * 保持していない結果の読み込みを、指定した順に一つのタスクで行います。
+     * タスクを一つにまとめることで、移動のたびに起こすスレッドの切り替えを一度にします。
+     * Executorがタスクを受け付けなかった場合は何も読み込まず、{@link #take(Object)}は呼び出したスレッドでの
+     * 読み込みに任せます。
+     * @param loaders キーと読み込みを行う関数。関数は指定したExecutorで呼び出されます
+     */
+    void prefetch(Map<Object, Callable<Object>> loaders) {
+        Map<Object, CompletableFuture<Object>> started = new HashMap<>();
+        List<Runnable> tasks = new ArrayList<>(loaders.size());
+        synchronized (this) {
+            for (Map.Entry<Object, Callable<Object>> loader: loaders.entrySet()) {
+                Object key = loader.getKey();
+                if (states.containsKey(key) || loading.containsKey(key)) {
+                    continue;
+                }
+                CompletableFuture<Object> future = new CompletableFuture<>();
+                loading.put(key, future);
+                started.put(key, future);
+                future.whenComplete((state, e) -> complete(key, future, state));
+                Callable<Object> call = loader.getValue();
+                tasks.add(() -> {
+                    try {
+                        future.complete(call.call());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> tasks.forEach(Runnable::run));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                started.forEach(loading::remove);
+            }
+        }
+    }
+
+    private synchronized void complete(Object key, CompletableFuture<Object> future, Object state) {
+        if (loading.get(key) == future) {
+            loading.remove(key);
+            if (state != null) {
+                states.put(key, state);
+            }
+        }
+    }
+
+    /**
+     * 保持している結果を破棄し、読み込み中の結果を保持しないようにします。
+     */
+    synchronized void invalidate(Object key) {
+        states.remove(key);
+        loading.remove(key);
+    }
+
+    synchronized void clear() {
+        states.clear();
+        loading.clear();
+    }
+
+    synchronized int size() {
+        return states.size();
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.sirrop.historyj2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link Deflater}を使用する{@link SnapshotCompressor}です。
+ *
+ * <p>
+ *     圧縮結果の先頭1バイトは形式を表し、圧縮した場合は続く4バイトに元の長さを格納します。
+ *     圧縮しても小さくならないバイト列はそのまま格納されるため、小さな差分が膨らむことはありません。
+ * </p>
+ * <p>
+ *     {@link #train(List)}は、与えられた直列化結果の間で共通するバイト列(クラス記述子や
+ *     フィールド名など)を集めて辞書を作り、その辞書を使用する圧縮器を返します。
+ *     辞書は圧縮器ごとに保持され、圧縮結果には含まれません。
+ * </p>
+ */
+public final class DeflateCompressor implements SnapshotCompressor {
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+    /** Deflateが参照できる距離の上限 */
+    private static final int MAX_DICTIONARY = 32 * 1024;
+    /** 辞書に含めるバイト列の最小の長さ */
+    private static final int GRAM = 8;
+
+    private final int level;
+    private final byte[] dictionary;
+
+    public DeflateCompressor(int level, byte[] dictionary) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        this.level = level;
+        this.dictionary = dictionary == null || dictionary.length == 0 ? null : dictionary.clone();
+    }
+
+    public DeflateCompressor(int level) {
+        this(level, null);
+    }
+
+    public DeflateCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * 圧縮に使用する辞書の大きさを返します。
+     * @return バイト数。辞書を使用しない場合は0
+     */
+    public int getDictionarySize() {
+        return dictionary == null ? 0 : dictionary.length;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[data.length + 1];
+            int length = 5;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished()) {
+                buffer[0] = STORED;
+                System.arraycopy(data, 0, buffer, 1, data.length);
+                return buffer;
+            }
+            buffer[0] = DEFLATED;
+            buffer[1] = (byte) (data.length >>> 24);
+            buffer[2] = (byte) (data.length >>> 16);
+            buffer[3] = (byte) (data.length >>> 8);
+            buffer[4] = (byte) data.length;
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        if (data.length == 0) {
+            throw new IOException("empty data");
+        }
+        if (data[0] == STORED) {
+            return Arrays.copyOfRange(data, 1, data.length);
+        }
+        if (data[0] != DEFLATED || data.length < 5) {
+            throw new IOException("unknown format: " + data[0]);
+        }
+        byte[] result = new byte[(data[1] & 0xFF) << 24 | (data[2] & 0xFF) << 16 | (data[3] & 0xFF) << 8 | (data[4] & 0xFF)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 5, data.length - 5);
+            int length = 0;
+            while (length < result.length) {
+                int n = inflater.inflate(result, length, result.length - length);
+                if (n == 0 && inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new IOException("dictionary is required");
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (n == 0 && (inflater.needsInput() || inflater.finished())) {
+                    throw new IOException("truncated data");
+                }
+                length += n;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 最初の直列化結果のうち、ほかの直列化結果にも現れる部分を辞書として使用する圧縮器を返します。
+     * 直列化結果が一つの場合はその全体を辞書にします。
+     */
+    @Override
+    public DeflateCompressor train(List<byte[]> samples) {
+        byte[] trained = dictionaryOf(samples);
+        return trained.length == 0 ? this : new DeflateCompressor(level, trained);
+    }
+
+    private static byte[] dictionaryOf(List<byte[]> samples) {
+        if (samples.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] first = samples.get(0);
+        if (samples.size() == 1) {
+            return Arrays.copyOfRange(first, Math.max(0, first.length - MAX_DICTIONARY), first.length);
+        }
+        Set<Long> grams = new HashSet<>();
+        for (byte[] sample: samples.subList(1, samples.size())) {
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                grams.add(gramAt(sample, i));
+            }
+        }
+        boolean[] shared = new boolean[first.length];
+        for (int i = 0; i + GRAM <= first.length; i++) {
+            if (grams.contains(gramAt(first, i))) {
+                Arrays.fill(shared, i, i + GRAM, true);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < first.length; i++) {
+            if (shared[i]) {
+                out.write(first[i]);
+            }
+        }
+        byte[] result = out.toByteArray();
+        // Deflateは近い位置の一致ほど短く符号化するため、上限を超える場合は後ろを残します。
+        return Arrays.copyOfRange(result, Math.max(0, result.length - MAX_DICTIONARY), result.length);
+    }
+
+    private static long gramAt(byte[] data, int offset) {
+        long result = 0;
+        for (int i = 0; i < GRAM; i++) {
+            result = result << 8 | (data[offset + i] & 0xFF);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.sirrop.historyj2;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * バイト列の差分を作成、適用するユーティリティです。
+ *
+ * <p>
+ *     差分は基準と対象の同じ位置にあるバイトを比較して作られます。共通する末尾は
+ *     基準の末尾からまとめてコピーされるため、途中で長さが変わった場合でも
+ *     変更箇所より後ろは差分に含まれません。
+ * </p>
+ * <pre>
+ *     delta  := targetLength suffixLength op*
+ *     op     := copyLength literalLength literal
+ * </pre>
+ * 長さはすべて可変長整数で書き込まれます。
+ */
+final class Delta {
+    /** これより短い一致はコピーではなくリテラルとして扱います。 */
+    private static final int MIN_MATCH = 8;
+
+    private Delta() {}
+
+    static byte[] encode(byte[] base, byte[] target) {
+        int max = Math.min(base.length, target.length);
+        int suffix = 0;
+        while (suffix < max && base[base.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+            suffix++;
+        }
+        int limit = target.length - suffix;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        writeVarint(out, suffix);
+        int pos = 0;
+        while (pos < limit) {
+            int copy = matchLength(base, target, pos, limit);
+            pos += copy;
+            int literal = pos;
+            while (literal < limit && matchLength(base, target, literal, limit) < MIN_MATCH) {
+                literal++;
+            }
+            writeVarint(out, copy);
+            writeVarint(out, literal - pos);
+            out.write(target, pos, literal - pos);
+            pos = literal;
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] result = new byte[readVarint(delta, pos)];
+        int suffix = readVarint(delta, pos);
+        int limit = result.length - suffix;
+        int offset = 0;
+        while (offset < limit) {
+            int copy = readVarint(delta, pos);
+            System.arraycopy(base, offset, result, offset, copy);
+            offset += copy;
+            int literal = readVarint(delta, pos);
+            System.arraycopy(delta, pos[0], result, offset, literal);
+            pos[0] += literal;
+            offset += literal;
+        }
+        System.arraycopy(base, base.length - suffix, result, limit, suffix);
+        return result;
+    }
+
+    private static int matchLength(byte[] base, byte[] target, int from, int limit) {
+        int end = Math.min(limit, base.length);
+        int i = from;
+        while (i < end && base[i] == target[i]) {
+            i++;
+        }
+        return i - from;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return result;
+    }
+}
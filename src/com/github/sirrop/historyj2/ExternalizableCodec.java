@@ -0,0 +1,94 @@
+package com.github.sirrop.historyj2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+
+/**
+ * {@link Externalizable}を実装したクラスのコーデックです。
+ *
+ * <p>
+ *     ストリームヘッダやクラス記述子を書き込まず、{@link Externalizable#writeExternal(ObjectOutput)}が
+ *     書き込んだ内容だけを保持します。{@link ObjectOutput#writeObject(Object)}で書き込まれた
+ *     オブジェクトは長さを付けて直列化されます。
+ * </p>
+ */
+final class ExternalizableCodec<T extends Externalizable> implements SnapshotCodec<T> {
+    private final MethodHandle constructor;
+
+    private ExternalizableCodec(MethodHandle constructor) {
+        this.constructor = constructor;
+    }
+
+    static <T extends Externalizable> ExternalizableCodec<T> of(Class<T> type) {
+        try {
+            Constructor<T> constructor = type.getConstructor();
+            constructor.setAccessible(true);
+            return new ExternalizableCodec<>(MethodHandles.lookup()
+                    .unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(Externalizable.class)));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " has no public no-arg constructor", e);
+        }
+    }
+
+    @Override
+    public void write(T value, OutputStream out) throws IOException {
+        DataObjectOutput output = new DataObjectOutput(out);
+        value.writeExternal(output);
+        output.flush();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T read(InputStream in) throws IOException, ClassNotFoundException {
+        T result;
+        try {
+            result = (T) (Externalizable) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        result.readExternal(new DataObjectInput(in));
+        return result;
+    }
+
+    private static class DataObjectOutput extends DataOutputStream implements ObjectOutput {
+        DataObjectOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SerializationCodec.INSTANCE.write(obj, bytes);
+            writeInt(bytes.size());
+            bytes.writeTo(this);
+        }
+    }
+
+    private static class DataObjectInput extends DataInputStream implements ObjectInput {
+        DataObjectInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public Object readObject() throws IOException, ClassNotFoundException {
+            byte[] bytes = new byte[readInt()];
+            readFully(bytes);
+            return SerializationCodec.INSTANCE.read(new ByteArrayInputStream(bytes));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.sirrop.historyj2;
+
+import com.github.sirrop.historyj2.annotation.History;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+
+/**
+ * 変更されたフィールドだけを記録する履歴オブジェクトです。
+ *
+ * <p>
+ *     {@link FieldDeltaHistory#add(Object)}は、オブジェクトの各フィールドを前回追加した時点の値と比較し、
+ *     変更されたフィールドの番号と変更前後の値だけを記録します。{@link FieldDeltaHistory#undo()},
+ *     {@link FieldDeltaHistory#redo()}はその要素で変更されたフィールドだけを書き戻すため、
+ *     追加と復元にかかる時間はオブジェクトの大きさではなく変更の大きさに比例します。
+ *     直列化は行わず、対象のクラスは{@link java.io.Serializable}を実装する必要がありません。
+ * </p>
+ * <p>
+ *     対象になるフィールドは{@link History.Tracked}と同じ規則で選ばれます。配列は内容を、
+ *     基本型は値を、それ以外のフィールドは参照を比較します。
+ *     オブジェクトを最初に追加した要素はその時点の状態を基準として記録するだけで、変更を含みません。
+ * </p>
+ * <p>
+ *     {@link FieldDeltaHistory#undo()}は現在の要素の変更を取り消し、{@link FieldDeltaHistory#redo()}は
+ *     次の要素の変更をやり直します。オブジェクトの変更はすべて{@link FieldDeltaHistory#add(Object)}で
+ *     記録されている必要があります。
+ * </p>
+ * @param <T> the type of elements
+ */
+public class FieldDeltaHistory<T> extends AbstractHistory<T> {
+    private static final int[] NO_FIELDS = new int[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private static final class Record<T> {
+        final T ref;
+        /** 変更されたフィールドの番号 */
+        final int[] fields;
+        final Object[] before;
+        final Object[] after;
+
+        Record(T ref, int[] fields, Object[] before, Object[] after) {
+            this.ref = ref;
+            this.fields = fields;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * 現在の要素の時点でのオブジェクトの状態です。
+     */
+    private static final class Shadow {
+        final ReflectiveSnapshotter fields;
+        final Object[] values;
+        int references;
+
+        Shadow(ReflectiveSnapshotter fields, Object target) {
+            this.fields = fields;
+            values = new Object[fields.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = fields.get(target, i);
+            }
+        }
+    }
+
+    private final RingHistory<Record<T>> delegate;
+    private final Map<Object, Shadow> shadows = new IdentityHashMap<>();
+
+    public FieldDeltaHistory(int initialCapacity) {
+        delegate = new RingHistory<>(initialCapacity, this::release, this);
+    }
+
+    public FieldDeltaHistory() {
+        this(100);
+    }
+
+    @Override
+    public void add(T record) {
+        Objects.requireNonNull(record);
+        Shadow shadow = shadows.get(record);
+        if (shadow == null) {
+            shadow = new Shadow(ReflectiveSnapshotter.of(record.getClass()), record);
+            shadow.references++;
+            shadows.put(record, shadow);
+            delegate.add(new Record<>(record, NO_FIELDS, NO_VALUES, NO_VALUES));
+            fireAdd();
+            return;
+        }
+        ReflectiveSnapshotter fields = shadow.fields;
+        int[] changed = new int[fields.size()];
+        Object[] current = new Object[fields.size()];
+        int count = 0;
+        for (int i = 0; i < changed.length; i++) {
+            Object value = fields.get(record, i);
+            if (!fields.isSame(i, shadow.values[i], value)) {
+                changed[count] = i;
+                current[count] = value;
+                count++;
+            }
+        }
+        int[] indices = new int[count];
+        Object[] before = new Object[count];
+        Object[] after = new Object[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = changed[i];
+            before[i] = shadow.values[changed[i]];
+            after[i] = current[i];
+            shadow.values[changed[i]] = current[i];
+        }
+        // 要素を追加すると破棄された要素のreferencesが減るため、先に増やしておきます。
+        shadow.references++;
+        delegate.add(new Record<>(record, indices, before, after));
+        fireAdd();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        shadows.clear();
+        fireClear();
+    }
+
+    @Override
+    public T currentRecord() {
+        Record<T> record = delegate.currentRecord();
+        return record == null ? null : record.ref;
+    }
+
+    @Override
+    public int currentIndex() {
+        return delegate.currentIndex();
+    }
+
+    @Override
+    public int getCapacity() {
+        return delegate.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        delegate.setCapacity(capacity);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return new IndexedSpliterator<>(i -> delegate.get(i).ref, 0, delegate.size());
+    }
+
+    @Override
+    public T undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        apply(delegate.currentRecord(), false);
+        T result = delegate.undo().ref;
+        fireUndo();
+        return result;
+    }
+
+    @Override
+    public T redo() {
+        Record<T> record = delegate.redo();
+        apply(record, true);
+        fireRedo();
+        return record.ref;
+    }
+
+    /**
+     * 指定した位置の要素に移動します。間にある要素の変更を順に書き戻します。
+     * @param index index of the element
+     * @return 移動先の要素
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public T jumpTo(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        for (int i = currentIndex(); i > index; i--) {
+            apply(delegate.get(i), false);
+        }
+        for (int i = currentIndex() + 1; i <= index; i++) {
+            apply(delegate.get(i), true);
+        }
+        T result = delegate.jumpTo(index).ref;
+        fireJump();
+        return result;
+    }
+
+    /**
+     * 要素で変更されたフィールドを書き戻します。
+     * @param redo trueの場合は変更後の値を、falseの場合は変更前の値を書き戻します
+     */
+    private void apply(Record<T> record, boolean redo) {
+        if (record.fields.length == 0) {
+            return;
+        }
+        Shadow shadow = shadows.get(record.ref);
+        Object[] values = redo ? record.after : record.before;
+        for (int i = 0; i < record.fields.length; i++) {
+            shadow.fields.set(record.ref, record.fields[i], values[i]);
+            shadow.values[record.fields[i]] = values[i];
+        }
+    }
+
+    private void release(Record<T> record) {
+        Shadow shadow = shadows.get(record.ref);
+        if (shadow != null && --shadow.references == 0) {
+            shadows.remove(record.ref);
+        }
+    }
+}
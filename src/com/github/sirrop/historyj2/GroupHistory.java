@@ -0,0 +1,331 @@
+package com.github.sirrop.historyj2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * 複数のオブジェクトを一つの要素として直列化する履歴オブジェクトです。
+ * {@link GroupHistory#undo()}, {@link GroupHistory#redo()}は要素に含まれるすべてのオブジェクトの状態を
+ * まとめて変更します。
+ *
+ * <p>
+ *     各オブジェクトの直列化と読み込みは{@link ForkJoinPool}で並列に行われます。デフォルトでは
+ *     {@link ForkJoinPool#commonPool()}を使用します。直列化の形式は{@link SnapshotCodecs}に従うため、
+ *     使用するコーデックはスレッドセーフである必要があります。呼び出したスレッドで順に行う場合は
+ *     {@link #setPool(ForkJoinPool)}にnullを指定してください。
+ * </p>
+ * <p>
+ *     復元はすべてのオブジェクトの読み込みが成功してから書き戻すため、読み込みに失敗した場合は
+ *     どのオブジェクトも変更されません。書き戻しと
+ *     {@link com.github.sirrop.historyj2.annotation.History.Update}を付けたメソッドの呼び出しは、
+ *     {@link BinaryHistory}と同じく呼び出したスレッドで行われます。
+ * </p>
+ * <p>
+ *     直前の要素と直列化結果が同じオブジェクトは、直前の要素と同じ配列を共有します。
+ *     移動元と移動先の要素で同じ配列を共有しているオブジェクトは変更されていないものとして、
+ *     復元を省略します。そのため、追加せずに行ったそのオブジェクトへの変更は元に戻りません。
+ *     移動先の要素に含まれないオブジェクトも変更されません。
+ * </p>
+ */
+public class GroupHistory extends AbstractHistory<List<? extends Serializable>> {
+    private static final class Entry {
+        final List<? extends Serializable> refs;
+        final byte[][] snapshots;
+
+        Entry(List<? extends Serializable> refs, byte[][] snapshots) {
+            this.refs = refs;
+            this.snapshots = snapshots;
+        }
+
+        /**
+         * オブジェクトから直列化結果への対応を返します。
+         */
+        Map<Serializable, byte[]> snapshotsByRef() {
+            Map<Serializable, byte[]> result = new IdentityHashMap<>(refs.size() * 2);
+            for (int i = 0; i < snapshots.length; i++) {
+                result.put(refs.get(i), snapshots[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 範囲を半分に分けながら処理を並列に行います。
+     */
+    private static final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer task;
+        private final int from;
+        private final int to;
+
+        Split(IntConsumer task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split(task, from, middle), new Split(task, middle, to));
+        }
+    }
+
+    private final RingHistory<Entry> delegate;
+    private final SnapshotCodecs codecs;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private long sharedSnapshots;
+    private long skippedRestores;
+
+    public GroupHistory(int initialCapacity, SnapshotCodecs codecs) {
+        delegate = new RingHistory<>(initialCapacity, null, this);
+        this.codecs = Objects.requireNonNull(codecs);
+    }
+
+    public GroupHistory(int initialCapacity) {
+        this(initialCapacity, new SnapshotCodecs());
+    }
+
+    public GroupHistory() {
+        this(100);
+    }
+
+    /**
+     * 指定したオブジェクトの現在の状態を一つの要素として追加します。
+     * @param record 要素に含めるオブジェクト
+     * @exception NullPointerException 引数またはその要素がnullの場合
+     * @exception IllegalArgumentException 同じオブジェクトが複数含まれる場合。
+     *                                     直列化に失敗した場合はIOExceptionをラップして投げられます
+     */
+    @Override
+    public void add(List<? extends Serializable> record) {
+        List<? extends Serializable> refs = List.copyOf(record);
+        Set<Serializable> distinct = Collections.newSetFromMap(new IdentityHashMap<>(refs.size() * 2));
+        for (Serializable ref: refs) {
+            if (!distinct.add(ref)) {
+                throw new IllegalArgumentException("Duplicate object: " + ref);
+            }
+        }
+        long start = hasListeners() ? System.nanoTime() : 0;
+        byte[][] snapshots = new byte[refs.size()][];
+        try {
+            parallel(snapshots.length, i -> snapshots[i] = encode(refs.get(i)));
+        } catch (UncheckedIOException e) {
+            throw new IllegalArgumentException(e.getCause());
+        }
+        Entry previous = delegate.currentRecord();
+        Map<Serializable, byte[]> previousSnapshots = previous == null ? Map.of() : previous.snapshotsByRef();
+        int bytes = 0;
+        for (int i = 0; i < snapshots.length; i++) {
+            bytes += snapshots[i].length;
+            byte[] before = previousSnapshots.get(refs.get(i));
+            if (before != null && Arrays.equals(before, snapshots[i])) {
+                snapshots[i] = before;
+                sharedSnapshots++;
+            }
+        }
+        delegate.add(new Entry(refs, snapshots));
+        if (start != 0) {
+            fireSerialize(bytes, System.nanoTime() - start);
+        }
+        fireAdd();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        fireClear();
+    }
+
+    @Override
+    public List<? extends Serializable> currentRecord() {
+        Entry entry = delegate.currentRecord();
+        return entry == null ? null : entry.refs;
+    }
+
+    @Override
+    public int currentIndex() {
+        return delegate.currentIndex();
+    }
+
+    @Override
+    public int getCapacity() {
+        return delegate.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        delegate.setCapacity(capacity);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Spliterator<List<? extends Serializable>> spliterator() {
+        return new IndexedSpliterator<>(i -> delegate.get(i).refs, 0, delegate.size());
+    }
+
+    @Override
+    public List<? extends Serializable> undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        restore(delegate.currentRecord(), delegate.get(currentIndex() - 1), "Can't undo");
+        List<? extends Serializable> result = delegate.undo().refs;
+        fireUndo();
+        return result;
+    }
+
+    @Override
+    public List<? extends Serializable> redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        restore(delegate.currentRecord(), delegate.get(currentIndex() + 1), "Can't redo");
+        List<? extends Serializable> result = delegate.redo().refs;
+        fireRedo();
+        return result;
+    }
+
+    /**
+     * 指定した位置の要素に移動し、その要素に含まれるオブジェクトの状態を変更します。
+     * 移動する距離に関係なく、復元は一度だけ行われます。
+     * @param index index of the element
+     * @return 状態を変更したオブジェクト
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public List<? extends Serializable> jumpTo(int index) {
+        Entry target = delegate.get(index);
+        restore(delegate.currentRecord(), target, "Can't jump");
+        delegate.jumpTo(index);
+        fireJump();
+        return target.refs;
+    }
+
+    /**
+     * 直列化と復元に使用する{@link ForkJoinPool}を返します。
+     * @return プール。呼び出したスレッドで行う場合はnull
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * 直列化と復元に使用する{@link ForkJoinPool}を変更します。
+     * デフォルトは{@link ForkJoinPool#commonPool()}です。
+     * @param pool プール。nullの場合は呼び出したスレッドで順に行います
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 直前の要素と直列化結果が同じだったため、配列を共有したオブジェクトの数を返します。
+     * @return 配列を共有した数
+     */
+    public long getSharedSnapshotCount() {
+        return sharedSnapshots;
+    }
+
+    /**
+     * 変更されていないため、復元を省略したオブジェクトの数を返します。
+     * @return 復元を省略した数
+     */
+    public long getSkippedRestoreCount() {
+        return skippedRestores;
+    }
+
+    private void restore(Entry current, Entry target, String message) {
+        long start = hasListeners() ? System.nanoTime() : 0;
+        Map<Serializable, byte[]> currentSnapshots = current.snapshotsByRef();
+        int[] changed = new int[target.snapshots.length];
+        int count = 0;
+        for (int i = 0; i < target.snapshots.length; i++) {
+            if (currentSnapshots.get(target.refs.get(i)) != target.snapshots[i]) {
+                changed[count++] = i;
+            }
+        }
+        skippedRestores += target.snapshots.length - count;
+        Object[] restored = new Object[count];
+        try {
+            parallel(count, i -> restored[i] = decode(target.refs.get(changed[i]), target.snapshots[changed[i]]));
+        } catch (UncheckedIOException e) {
+            throw new IllegalStateException(message, e.getCause());
+        }
+        // 書き戻しと更新メソッドの呼び出しはBinaryHistoryと同じく呼び出したスレッドで行います
+        for (int i = 0; i < count; i++) {
+            Serializable ref = target.refs.get(changed[i]);
+            try {
+                RestorePlan.of(ref.getClass()).restore(ref, restored[i]);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(message, e);
+            }
+        }
+        if (start != 0) {
+            fireRestore(System.nanoTime() - start);
+        }
+    }
+
+    private void parallel(int count, IntConsumer task) {
+        if (count == 0) {
+            return;
+        }
+        if (count == 1 || pool == null) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+        pool.invoke(new Split(task, 0, count));
+    }
+
+    private byte[] encode(Serializable serializable) {
+        SnapshotBuffer buffer = SnapshotBuffer.acquire();
+        try {
+            codecOf(serializable).write(serializable, buffer);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private Object decode(Serializable ref, byte[] snapshot) {
+        try {
+            return codecOf(ref).read(new ByteArrayInputStream(snapshot));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Serializable> SnapshotCodec<T> codecOf(T value) {
+        return codecs.forClass((Class<T>) value.getClass());
+    }
+}
@@ -1,6 +1,10 @@
 package com.github.sirrop.historyj2;
 
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface History<R> {
     /**
@@ -82,6 +86,65 @@ public interface History<R> {
      */
     R redo();
 
+    /**
+     * Moves the current record back by the specified number of steps and returns
+     * the element which becomes the current record.
+     * @param steps the number of steps
+     * @return the element which becomes the current record
+     * @exception IllegalArgumentException if steps is negative
+     * @exception IllegalStateException if cannot undo the specified number of steps
+     */
+    default R undo(int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps is negative.");
+        }
+        if (steps > currentIndex()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        return jumpTo(currentIndex() - steps);
+    }
+
+    /**
+     * Moves the current record forward by the specified number of steps and returns
+     * the element which becomes the current record.
+     * @param steps the number of steps
+     * @return the element which becomes the current record
+     * @exception IllegalArgumentException if steps is negative
+     * @exception IllegalStateException if cannot redo the specified number of steps
+     */
+    default R redo(int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps is negative.");
+        }
+        if (currentIndex() == -1 || steps > size() - 1 - currentIndex()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        return jumpTo(currentIndex() + steps);
+    }
+
+    /**
+     * Sets the current record to the element at the specified index and returns it.
+     * <p>
+     *     The default implementation calls {@link #undo()} or {@link #redo()} repeatedly.
+     * </p>
+     * @param index index of the element
+     * @return the element at the specified index
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    default R jumpTo(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        R result = currentRecord();
+        while (currentIndex() > index) {
+            result = undo();
+        }
+        while (currentIndex() < index) {
+            result = redo();
+        }
+        return result;
+    }
+
     /**
      * Returns an {@link Optional} describing the previous element
      * of the current record, or an empty Optional if cannot undo.
@@ -94,4 +157,41 @@ public interface History<R> {
      * @return an Optional describing the previous element of the current record, or an empty Optional if cannot undo.
      */
     Optional<R> redoIfCan();
+
+    /**
+     * Returns a {@link Spliterator} over the elements of this history, from index 0 to
+     * {@link #size()} - 1. The spliterator is {@link Spliterator#ORDERED} and {@link Spliterator#SIZED},
+     * and splits without copying where the history supports random access, so a parallel stream
+     * visits the history in linear total time. Reading the elements does not move the current record.
+     * The history must not be modified while the spliterator is in use.
+     * <p>
+     *     The default implementation copies the elements into an array by calling {@link #jumpTo(int)}
+     *     and {@link #redo()} from the first element, then jumps back to the current record.
+     *     Any side effect of those methods, such as restoring state, happens once per element.
+     *     All histories in this library override it and read their elements without moving.
+     * </p>
+     * @return a spliterator over the elements
+     */
+    default Spliterator<R> spliterator() {
+        int size = size();
+        Object[] elements = new Object[size];
+        if (size != 0) {
+            int current = currentIndex();
+            elements[0] = jumpTo(0);
+            for (int i = 1; i < size; i++) {
+                elements[i] = redo();
+            }
+            jumpTo(current);
+        }
+        return Spliterators.spliterator(elements, Spliterator.ORDERED);
+    }
+
+    /**
+     * Returns a sequential {@link Stream} over the elements of this history.
+     * Call {@link Stream#parallel()} on the result for a parallel stream.
+     * @return a stream of the elements
+     */
+    default Stream<R> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
 }
@@ -0,0 +1,461 @@
+package com.github.sirrop.historyj2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 履歴の変更を追記専用のセグメントファイルに記録するジャーナルです。
+ *
+ * <p>
+ *     ジャーナルには要素の追加(PUT)、現在の要素の移動(CURSOR)、古い要素の破棄(TRIM)、
+ *     すべての要素の破棄(CLEAR)が順に記録されます。要素の内容は記録された位置だけを
+ *     メモリ上に保持し、必要になった時点でメモリマップしたファイルから読み込みます。
+ * </p>
+ * <p>
+ *     現在のセグメントへの追加が生きている要素の数と{@link #setSegmentCapacity(int)}で指定した数の
+ *     大きい方に達するか、セグメントの大きさが2GiBに達すると、
+ *     新しいセグメントに生きている要素だけを書き写し(チェックポイント)、古いセグメントを削除します。
+ *     書き写しはバイト列のコピーで、再度直列化することはありません。
+ * </p>
+ * <p>
+ *     {@link #open(Path)}は既存のセグメントをメモリマップし、各レコードのヘッダだけを読んで
+ *     索引を作ります。途中で途切れたレコードは、クラッシュで書き込みが中断されたものとして切り捨てられます。
+ * </p>
+ * @see BinaryHistory#attachJournal(HistoryJournal, java.io.Serializable)
+ * @see JournaledHistory
+ */
+public class HistoryJournal implements Closeable {
+    private static final byte PUT = 1;
+    private static final byte CURSOR = 2;
+    private static final byte TRIM = 3;
+    private static final byte CLEAR = 4;
+    private static final byte CHECKPOINT = 5;
+    /** op(1) + seq(8) + length(4) + crc(4) */
+    private static final int HEADER_SIZE = 17;
+    /** 位置をintで扱えるように、セグメントの大きさはこれを超えないようにします */
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    private static final String SUFFIX = ".seg";
+
+    /**
+     * ジャーナルに記録された要素です。セグメントが切り替わると位置が更新されます。
+     */
+    static final class Entry {
+        final long seq;
+        private Segment segment;
+        private long offset;
+        private int length;
+        /** 所有者が復元したオブジェクトを保持するための領域 */
+        Object cache;
+
+        private Entry(long seq, Segment segment, long offset, int length) {
+            this.seq = seq;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * 内容を参照するバッファを返します。
+         */
+        ByteBuffer buffer() {
+            try {
+                return segment.slice(offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        MappedByteBuffer map;
+        long size;
+
+        Segment(long id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        ByteBuffer slice(long offset, int length) throws IOException {
+            if (map == null || offset + length > map.capacity()) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            int position = Math.toIntExact(offset);
+            return map.duplicate().position(position).limit(position + length).slice();
+        }
+    }
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private final RingHistory<Entry> entries = new RingHistory<>(Integer.MAX_VALUE);
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private int segmentCapacity = 100;
+    private int putsSinceRoll;
+    private long lastSeq = -1;
+
+    private HistoryJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 指定したディレクトリのジャーナルを開きます。ディレクトリが存在しない場合は作成します。
+     * @param directory セグメントファイルを置くディレクトリ
+     * @return ジャーナル
+     * @exception IOException 読み込みに失敗した場合
+     */
+    public static HistoryJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        HistoryJournal journal = new HistoryJournal(directory);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+        for (Path path: paths) {
+            journal.replay(path);
+        }
+        if (journal.active == null) {
+            journal.active = journal.createSegment(0);
+        }
+        return journal;
+    }
+
+    private void replay(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.size());
+        segments.add(segment);
+        active = segment;
+        putsSinceRoll = 0;
+        if (segment.size == 0) {
+            return;
+        }
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        segment.map = map;
+        // ロールで書き写した要素はチェックポイントの後に記録されるまで適用しません。
+        // チェックポイントがなければ書き写しの途中で中断されたものとして、古いセグメントの結果に重ねます。
+        List<Integer> copied = new ArrayList<>();
+        boolean checkpointed = false;
+        int position = 0;
+        while (map.limit() - position >= HEADER_SIZE) {
+            byte op = map.get(position);
+            int length = map.getInt(position + 9);
+            int checksum = map.getInt(position + 13);
+            int payload = position + HEADER_SIZE;
+            if (length < 0 || map.limit() - payload < length) {
+                break;
+            }
+            crc.reset();
+            crc.update(map.duplicate().position(payload).limit(payload + length));
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (op == CHECKPOINT && !checkpointed) {
+                checkpointed = true;
+                entries.clear();
+                for (int record: copied) {
+                    apply(segment, map, record);
+                }
+                copied = null;
+            } else if (checkpointed) {
+                apply(segment, map, position);
+            } else {
+                copied.add(position);
+            }
+            position = payload + length;
+        }
+        if (!checkpointed) {
+            for (int record: copied) {
+                apply(segment, map, record);
+            }
+        }
+        if (position < segment.size) {
+            channel.truncate(position);
+            segment.size = position;
+            segment.map = null;
+        }
+    }
+
+    private void apply(Segment segment, MappedByteBuffer map, int position) {
+        apply(map.get(position), map.getLong(position + 1), segment, position + HEADER_SIZE, map.getInt(position + 9));
+    }
+
+    private void apply(byte op, long seq, Segment segment, long offset, int length) {
+        switch (op) {
+            case PUT:
+                lastSeq = Math.max(lastSeq, seq);
+                putsSinceRoll++;
+                Entry existing = find(seq);
+                if (existing != null) {
+                    existing.segment = segment;
+                    existing.offset = offset;
+                    existing.length = length;
+                    existing.cache = null;
+                } else {
+                    entries.add(new Entry(seq, segment, offset, length));
+                }
+                break;
+            case CURSOR:
+                int index = indexOf(seq);
+                if (index >= 0) {
+                    entries.jumpTo(index);
+                }
+                break;
+            case TRIM:
+                while (entries.size() > 0 && entries.get(0).seq < seq) {
+                    entries.removeFirst();
+                }
+                break;
+            case CLEAR:
+                entries.clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown record: " + op);
+        }
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path path = directory.resolve(String.format("%016d%s", id, SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        Segment segment = new Segment(id, path, channel, 0);
+        segments.add(segment);
+        return segment;
+    }
+
+    private long write(byte op, long seq, ByteBuffer payload) throws IOException {
+        int length = payload == null ? 0 : payload.remaining();
+        if (active.size + HEADER_SIZE + length > MAX_SEGMENT_SIZE) {
+            throw new IOException("Segment size exceeds " + MAX_SEGMENT_SIZE + " bytes");
+        }
+        crc.reset();
+        if (payload != null) {
+            crc.update(payload.duplicate());
+        }
+        header.clear();
+        header.put(op).putLong(seq).putInt(length).putInt((int) crc.getValue()).flip();
+        long offset = active.size + HEADER_SIZE;
+        active.channel.position(active.size);
+        while (header.hasRemaining()) {
+            active.channel.write(header);
+        }
+        while (payload != null && payload.hasRemaining()) {
+            active.channel.write(payload);
+        }
+        active.size = offset + length;
+        return offset;
+    }
+
+    /**
+     * 新しい連番を返します。
+     */
+    long nextSeq() {
+        return ++lastSeq;
+    }
+
+    /**
+     * 要素を記録します。同じ連番の要素があればその内容を置き換え、
+     * なければ現在の要素より後ろの要素を破棄して末尾に追加し、現在の要素にします。
+     */
+    Entry put(long seq, byte[] payload) {
+        try {
+            if (putsSinceRoll >= Math.max(segmentCapacity, entries.size())
+                    || active.size + HEADER_SIZE + payload.length > MAX_SEGMENT_SIZE) {
+                roll();
+            }
+            lastSeq = Math.max(lastSeq, seq);
+            long offset = write(PUT, seq, ByteBuffer.wrap(payload));
+            putsSinceRoll++;
+            Entry existing = find(seq);
+            if (existing != null) {
+                existing.segment = active;
+                existing.offset = offset;
+                existing.length = payload.length;
+                existing.cache = null;
+                return existing;
+            }
+            Entry entry = new Entry(seq, active, offset, payload.length);
+            entries.add(entry);
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 指定した連番の要素を現在の要素にします。
+     */
+    void moveTo(long seq) {
+        if (entries.currentIndex() != -1 && entries.currentRecord().seq == seq) {
+            return;
+        }
+        int index = indexOf(seq);
+        if (index < 0) {
+            return;
+        }
+        try {
+            write(CURSOR, seq, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.jumpTo(index);
+    }
+
+    /**
+     * 指定した連番より前の要素を破棄します。
+     */
+    void trim(long seq) {
+        if (entries.size() == 0 || entries.get(0).seq >= seq) {
+            return;
+        }
+        try {
+            write(TRIM, seq, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        while (entries.size() > 0 && entries.get(0).seq < seq) {
+            entries.removeFirst();
+        }
+    }
+
+    /**
+     * すべての要素を破棄します。
+     */
+    void clear() {
+        try {
+            write(CLEAR, lastSeq, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int currentIndex() {
+        return entries.currentIndex();
+    }
+
+    Entry get(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * 生きている要素だけを新しいセグメントに書き写し、古いセグメントを削除します。
+     * チェックポイントは書き写した内容をストレージに反映してから記録するため、
+     * 途中で中断された場合は古いセグメントから復元されます。
+     */
+    private void roll() throws IOException {
+        Segment previous = active;
+        active = createSegment(previous.id + 1);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            long offset = write(PUT, entry.seq, entry.segment.slice(entry.offset, entry.length));
+            entry.segment = active;
+            entry.offset = offset;
+        }
+        if (entries.currentIndex() != -1) {
+            write(CURSOR, entries.currentRecord().seq, null);
+        }
+        active.channel.force(false);
+        write(CHECKPOINT, lastSeq, null);
+        active.channel.force(false);
+        putsSinceRoll = 0;
+        for (Segment segment: new ArrayList<>(segments)) {
+            if (segment != active) {
+                segments.remove(segment);
+                segment.map = null;
+                segment.channel.close();
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException ignored) {
+                    // メモリマップが残っている環境では削除できないことがあります。
+                    // 新しいセグメントは先頭で索引を作り直すため、残ったセグメントは結果に影響しません。
+                }
+            }
+        }
+    }
+
+    private Entry find(long seq) {
+        int index = indexOf(seq);
+        return index < 0 ? null : entries.get(index);
+    }
+
+    private int indexOf(long seq) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = entries.get(mid).seq;
+            if (value < seq) {
+                low = mid + 1;
+            } else if (value > seq) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * セグメントが切り替わるまでに追加する要素の数を返します。
+     * @return 要素の数
+     */
+    public int getSegmentCapacity() {
+        return segmentCapacity;
+    }
+
+    /**
+     * セグメントが切り替わるまでに追加する要素の数を変更します。通常は履歴の容量と同じ値を指定します。
+     * @param segmentCapacity 要素の数
+     * @exception IllegalArgumentException 0以下の値が指定された場合
+     */
+    public void setSegmentCapacity(int segmentCapacity) {
+        if (segmentCapacity <= 0) {
+            throw new IllegalArgumentException("segment capacity is negative or zero.");
+        }
+        this.segmentCapacity = segmentCapacity;
+    }
+
+    /**
+     * 書き込んだ内容をストレージに反映します。
+     * @exception IOException 反映に失敗した場合
+     */
+    public void flush() throws IOException {
+        active.channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Segment segment: segments) {
+            segment.map = null;
+            segment.channel.close();
+        }
+        segments.clear();
+    }
+}
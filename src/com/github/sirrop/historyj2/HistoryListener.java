@@ -0,0 +1,75 @@
+package com.github.sirrop.historyj2;
+
+/**
+ * Receives the operations performed on a {@link History}.
+ * <p>
+ *     Register a listener with {@link AbstractHistory#addListener(HistoryListener)}.
+ *     Every method has an empty default implementation, so a listener overrides only the
+ *     events it is interested in. Events are delivered on the thread that called the history,
+ *     after the operation has completed.
+ * </p>
+ * @see HistoryMetrics
+ */
+public interface HistoryListener {
+    /**
+     * Called after an element has been added.
+     * @param history the history that fired the event
+     */
+    default void onAdd(History<?> history) {
+    }
+
+    /**
+     * Called after {@link History#undo()}.
+     * @param history the history that fired the event
+     */
+    default void onUndo(History<?> history) {
+    }
+
+    /**
+     * Called after {@link History#redo()}.
+     * @param history the history that fired the event
+     */
+    default void onRedo(History<?> history) {
+    }
+
+    /**
+     * Called after {@link History#jumpTo(int)}, including the moves made by
+     * {@link History#undo(int)} and {@link History#redo(int)}.
+     * A history that implements the jump with repeated undo and redo fires those events instead.
+     * @param history the history that fired the event
+     */
+    default void onJump(History<?> history) {
+    }
+
+    /**
+     * Called for every element evicted because the history exceeded its capacity or budget.
+     * Redo entries discarded by an add and elements removed by a clear are not evictions.
+     * @param history the history that fired the event
+     */
+    default void onEvict(History<?> history) {
+    }
+
+    /**
+     * Called after {@link History#clear()}.
+     * @param history the history that fired the event
+     */
+    default void onClear(History<?> history) {
+    }
+
+    /**
+     * Called after a {@link BinaryHistory} has serialized an added element.
+     * @param history the history that fired the event
+     * @param bytes the length of the serialized form before compression
+     * @param nanos the time taken to serialize, encode the delta and compress
+     */
+    default void onSerialize(History<?> history, int bytes, long nanos) {
+    }
+
+    /**
+     * Called after a {@link BinaryHistory} has restored an object to the state of an element.
+     * @param history the history that fired the event
+     * @param nanos the time taken to read, deserialize and write back the state
+     */
+    default void onRestore(History<?> history, long nanos) {
+    }
+}
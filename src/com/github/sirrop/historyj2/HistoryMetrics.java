@@ -0,0 +1,300 @@
+package com.github.sirrop.historyj2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link HistoryListener} that aggregates the events of one or more histories.
+ * <p>
+ *     Counters and histograms are updated with {@link LongAdder}s, so one instance can be
+ *     registered with histories used by different threads and read from a metrics exporter
+ *     at any time. Latencies and sizes are recorded in {@link Histogram}s with power-of-two buckets.
+ * </p>
+ * <p>
+ *     The size and retained-bytes gauges are the values observed at the most recent event,
+ *     so they describe a single history only when this instance is registered with one history.
+ *     The retained bytes are those of {@link BinaryHistory#getRetainedBytes()}, and 0 for other histories.
+ * </p>
+ * <pre>
+ *     HistoryMetrics metrics = new HistoryMetrics();
+ *     history.addListener(metrics);
+ *     ...
+ *     long p99 = metrics.getRestoreNanos().getPercentile(0.99);
+ * </pre>
+ */
+public class HistoryMetrics implements HistoryListener {
+    /**
+     * A histogram of non-negative values with power-of-two buckets.
+     * <p>
+     *     Bucket 0 counts the value 0 and bucket {@code i} counts the values from
+     *     {@code 2^(i-1)} to {@code 2^i - 1}, so recording is constant time and
+     *     the relative error of a percentile is at most a factor of two.
+     * </p>
+     */
+    public static final class Histogram {
+        /** The number of buckets */
+        public static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+        }
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        private static int bucketOf(long value) {
+            return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(value));
+        }
+
+        /**
+         * Returns the largest value counted by the specified bucket.
+         * @param bucket index of the bucket
+         * @return the upper bound of the bucket
+         * @exception IndexOutOfBoundsException if the index is out of range
+         */
+        public static long getUpperBound(int bucket) {
+            if (bucket < 0 || bucket >= BUCKETS) {
+                throw new IndexOutOfBoundsException(bucket);
+            }
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        /**
+         * Returns the number of values counted by the specified bucket.
+         * @param bucket index of the bucket
+         * @return the number of values
+         * @exception IndexOutOfBoundsException if the index is out of range
+         */
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * Returns the number of recorded values.
+         * @return the number of values
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the sum of the recorded values.
+         * @return the sum
+         */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * Returns the largest recorded value.
+         * @return the largest value, or 0 if no value has been recorded
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Returns the mean of the recorded values.
+         * @return the mean, or 0 if no value has been recorded
+         */
+        public double getMean() {
+            long n = getCount();
+            return n == 0 ? 0 : (double) getSum() / n;
+        }
+
+        /**
+         * Returns an upper estimate of the specified percentile: the upper bound of the bucket
+         * that contains it, or the largest recorded value if that is smaller.
+         * @param quantile the percentile between 0 and 1, such as 0.99
+         * @return the estimate, or 0 if no value has been recorded
+         * @exception IllegalArgumentException if the quantile is out of range
+         */
+        public long getPercentile(double quantile) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("quantile is out of range.");
+            }
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(getUpperBound(i), getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder undos = new LongAdder();
+    private final LongAdder redos = new LongAdder();
+    private final LongAdder jumps = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder clears = new LongAdder();
+    private final Histogram serializeNanos = new Histogram();
+    private final Histogram serializedBytes = new Histogram();
+    private final Histogram restoreNanos = new Histogram();
+    private volatile int size;
+    private volatile long retainedBytes;
+
+    @Override
+    public void onAdd(History<?> history) {
+        adds.increment();
+        observe(history);
+    }
+
+    @Override
+    public void onUndo(History<?> history) {
+        undos.increment();
+        observe(history);
+    }
+
+    @Override
+    public void onRedo(History<?> history) {
+        redos.increment();
+        observe(history);
+    }
+
+    @Override
+    public void onJump(History<?> history) {
+        jumps.increment();
+        observe(history);
+    }
+
+    @Override
+    public void onEvict(History<?> history) {
+        evictions.increment();
+    }
+
+    @Override
+    public void onClear(History<?> history) {
+        clears.increment();
+        observe(history);
+    }
+
+    @Override
+    public void onSerialize(History<?> history, int bytes, long nanos) {
+        serializeNanos.record(nanos);
+        serializedBytes.record(bytes);
+    }
+
+    @Override
+    public void onRestore(History<?> history, long nanos) {
+        restoreNanos.record(nanos);
+    }
+
+    private void observe(History<?> history) {
+        size = history.size();
+        retainedBytes = history instanceof BinaryHistory ? ((BinaryHistory) history).getRetainedBytes() : 0;
+    }
+
+    /**
+     * Returns the number of added elements.
+     * @return the number of adds
+     */
+    public long getAddCount() {
+        return adds.sum();
+    }
+
+    /**
+     * Returns the number of {@link History#undo()} calls.
+     * @return the number of undos
+     */
+    public long getUndoCount() {
+        return undos.sum();
+    }
+
+    /**
+     * Returns the number of {@link History#redo()} calls.
+     * @return the number of redos
+     */
+    public long getRedoCount() {
+        return redos.sum();
+    }
+
+    /**
+     * Returns the number of {@link History#jumpTo(int)} calls.
+     * @return the number of jumps
+     */
+    public long getJumpCount() {
+        return jumps.sum();
+    }
+
+    /**
+     * Returns the number of evicted elements.
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of {@link History#clear()} calls.
+     * @return the number of clears
+     */
+    public long getClearCount() {
+        return clears.sum();
+    }
+
+    /**
+     * Returns the histogram of the time taken to serialize an element, in nanoseconds.
+     * @return the histogram
+     */
+    public Histogram getSerializeNanos() {
+        return serializeNanos;
+    }
+
+    /**
+     * Returns the histogram of the length of serialized elements before compression, in bytes.
+     * An unusually large maximum points to an object that is expensive to keep in a history.
+     * @return the histogram
+     */
+    public Histogram getSerializedBytes() {
+        return serializedBytes;
+    }
+
+    /**
+     * Returns the histogram of the time taken to restore an element, in nanoseconds.
+     * @return the histogram
+     */
+    public Histogram getRestoreNanos() {
+        return restoreNanos;
+    }
+
+    /**
+     * Returns the size of the history at the most recent event.
+     * @return the number of elements
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the bytes retained by the history at the most recent event.
+     * @return the number of bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+}
@@ -0,0 +1,432 @@
+package com.github.sirrop.historyj2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * キーごとの{@link BinaryHistory}を管理します。
+ *
+ * <p>
+ *     キーはハッシュ値で複数のシャードに振り分けられ、シャードごとのロックで検索されます。
+ *     履歴は{@link #apply(Object, Function)}で最初に使用された時点で作られ、
+ *     操作は履歴ごとのロックの中で行われるため、異なるキーの操作は互いを待ちません。
+ * </p>
+ * <p>
+ *     {@link #freezeIdle()}は、最後に使用されてから{@link #getIdleTimeout()}以上経った履歴の要素を
+ *     一つの圧縮したバイト列にまとめます(凍結)。凍結した履歴は次に使用された時点で元に戻されます。
+ *     要素ごとの管理情報と配列がなくなるため、多数の使われていない履歴を少ないメモリで保持出来ます。
+ *     ジャーナルを指定した履歴は凍結されません。
+ * </p>
+ * <pre>
+ *     HistoryRegistry&lt;String&gt; registry = new HistoryRegistry&lt;&gt;(key -&gt; new BinaryHistory());
+ *     scheduler.scheduleWithFixedDelay(registry::freezeIdle, 1, 1, TimeUnit.MINUTES);
+ *     registry.accept(sessionId, history -&gt; history.add(document));
+ * </pre>
+ * @param <K> the type of keys
+ */
+public class HistoryRegistry<K> {
+    /**
+     * {@link HistoryRegistry#getStatistics()}が返す、ある時点の集計値です。
+     */
+    public static final class Statistics {
+        private final int histories;
+        private final int frozenHistories;
+        private final long elements;
+        private final long retainedBytes;
+        private final long frozenBytes;
+        private final long created;
+        private final long frozen;
+        private final long thawed;
+
+        Statistics(int histories, int frozenHistories, long elements, long retainedBytes, long frozenBytes,
+                   long created, long frozen, long thawed) {
+            this.histories = histories;
+            this.frozenHistories = frozenHistories;
+            this.elements = elements;
+            this.retainedBytes = retainedBytes;
+            this.frozenBytes = frozenBytes;
+            this.created = created;
+            this.frozen = frozen;
+            this.thawed = thawed;
+        }
+
+        /**
+         * 管理している履歴の数を返します。
+         * @return 凍結した履歴を含む履歴の数
+         */
+        public int getHistoryCount() {
+            return histories;
+        }
+
+        /**
+         * 凍結している履歴の数を返します。
+         * @return 凍結している履歴の数
+         */
+        public int getFrozenHistoryCount() {
+            return frozenHistories;
+        }
+
+        /**
+         * すべての履歴の要素数の合計を返します。
+         * @return 凍結した履歴を含む要素数の合計
+         */
+        public long getElementCount() {
+            return elements;
+        }
+
+        /**
+         * 凍結していない履歴が保持している直列化結果の合計を返します。
+         * @return バイト数
+         * @see BinaryHistory#getRetainedBytes()
+         */
+        public long getRetainedBytes() {
+            return retainedBytes;
+        }
+
+        /**
+         * 凍結した履歴が保持しているバイト列の合計を返します。
+         * @return バイト数
+         */
+        public long getFrozenBytes() {
+            return frozenBytes;
+        }
+
+        /**
+         * これまでに作られた履歴の数を返します。
+         * @return 作られた履歴の数
+         */
+        public long getCreatedCount() {
+            return created;
+        }
+
+        /**
+         * これまでに凍結した回数を返します。
+         * @return 凍結した回数
+         */
+        public long getFreezeCount() {
+            return frozen;
+        }
+
+        /**
+         * これまでに凍結した履歴を元に戻した回数を返します。
+         * @return 元に戻した回数
+         */
+        public long getThawCount() {
+            return thawed;
+        }
+    }
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        BinaryHistory history;
+        BinaryHistory.Frozen frozen;
+        long lastAccess;
+        /** レジストリから削除された場合はtrue */
+        boolean removed;
+    }
+
+    private static final class Shard<K> {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<K, Entry> entries = new HashMap<>();
+    }
+
+    private final Shard<K>[] shards;
+    private final Function<? super K, ? extends BinaryHistory> factory;
+    private volatile long idleTimeout = Duration.ofMinutes(5).toNanos();
+    private volatile SnapshotCompressor freezeCompressor = new DeflateCompressor();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder frozen = new LongAdder();
+    private final LongAdder thawed = new LongAdder();
+
+    /**
+     * @param shards シャードの数。2の累乗に切り上げられます
+     * @param factory キーに対応する履歴を作る関数
+     * @exception IllegalArgumentException シャードの数が0以下の場合
+     */
+    @SuppressWarnings("unchecked")
+    public HistoryRegistry(int shards, Function<? super K, ? extends BinaryHistory> factory) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards is negative or zero.");
+        }
+        int length = Integer.highestOneBit(Math.min(shards, 1 << 16) * 2 - 1);
+        this.shards = (Shard<K>[]) new Shard<?>[length];
+        for (int i = 0; i < length; i++) {
+            this.shards[i] = new Shard<>();
+        }
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * 使用可能なプロセッサ数の4倍のシャードを使用します。
+     * @param factory キーに対応する履歴を作る関数
+     */
+    public HistoryRegistry(Function<? super K, ? extends BinaryHistory> factory) {
+        this(Runtime.getRuntime().availableProcessors() * 4, factory);
+    }
+
+    /**
+     * キーに対応する履歴に対して操作を行います。履歴がない場合は作り、凍結している場合は元に戻します。
+     * 操作の間、この履歴は他のスレッドから使用されず、凍結もされません。
+     * 操作の中で同じレジストリの他のキーを使用してはいけません。
+     * @param key キー
+     * @param action 履歴に対する操作
+     * @param <T> 戻り値の型
+     * @return 操作の戻り値
+     */
+    public <T> T apply(K key, Function<? super BinaryHistory, ? extends T> action) {
+        Objects.requireNonNull(action);
+        Shard<K> shard = shardOf(key);
+        while (true) {
+            Entry entry;
+            shard.lock.lock();
+            try {
+                entry = shard.entries.computeIfAbsent(key, k -> new Entry());
+            } finally {
+                shard.lock.unlock();
+            }
+            boolean failed = false;
+            entry.lock.lock();
+            try {
+                if (entry.removed) {
+                    continue;
+                }
+                if (entry.history == null) {
+                    try {
+                        entry.history = Objects.requireNonNull(factory.apply(key));
+                    } catch (RuntimeException | Error e) {
+                        // 作れなかった履歴の空の管理情報を残さないようにします
+                        entry.removed = true;
+                        failed = true;
+                        throw e;
+                    }
+                    created.increment();
+                } else if (entry.frozen != null) {
+                    entry.history.thaw(entry.frozen);
+                    entry.frozen = null;
+                    thawed.increment();
+                }
+                try {
+                    return action.apply(entry.history);
+                } finally {
+                    entry.lastAccess = System.nanoTime();
+                }
+            } finally {
+                entry.lock.unlock();
+                if (failed) {
+                    shard.lock.lock();
+                    try {
+                        shard.entries.remove(key, entry);
+                    } finally {
+                        shard.lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * キーに対応する履歴に対して操作を行います。
+     * @param key キー
+     * @param action 履歴に対する操作
+     * @see #apply(Object, Function)
+     */
+    public void accept(K key, Consumer<? super BinaryHistory> action) {
+        Objects.requireNonNull(action);
+        apply(key, history -> {
+            action.accept(history);
+            return null;
+        });
+    }
+
+    /**
+     * キーに対応する履歴があるかどうかを返します。
+     * @param key キー
+     * @return 履歴がある場合はtrue
+     */
+    public boolean contains(K key) {
+        Shard<K> shard = shardOf(key);
+        shard.lock.lock();
+        try {
+            return shard.entries.containsKey(key);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * キーに対応する履歴を削除し、保持している要素を破棄します。
+     * 他のスレッドが操作している場合は、その完了を待ちます。
+     * @param key キー
+     * @return 履歴があった場合はtrue
+     */
+    public boolean remove(K key) {
+        Shard<K> shard = shardOf(key);
+        Entry entry;
+        shard.lock.lock();
+        try {
+            entry = shard.entries.remove(key);
+        } finally {
+            shard.lock.unlock();
+        }
+        if (entry == null) {
+            return false;
+        }
+        entry.lock.lock();
+        try {
+            entry.removed = true;
+            if (entry.history != null && entry.frozen == null) {
+                entry.history.clear();
+            }
+            entry.history = null;
+            entry.frozen = null;
+        } finally {
+            entry.lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 管理している履歴の数を返します。
+     * @return 履歴の数
+     */
+    public int size() {
+        int result = 0;
+        for (Shard<K> shard: shards) {
+            shard.lock.lock();
+            try {
+                result += shard.entries.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 最後に使用されてから{@link #getIdleTimeout()}以上経った履歴を凍結します。
+     * 他のスレッドが操作している履歴と、凍結に失敗した履歴は飛ばします。定期的に呼び出すことを想定しています。
+     * @return 凍結した履歴の数
+     */
+    public int freezeIdle() {
+        long now = System.nanoTime();
+        long timeout = idleTimeout;
+        SnapshotCompressor compressor = freezeCompressor;
+        int result = 0;
+        for (Shard<K> shard: shards) {
+            for (Entry entry: entriesOf(shard)) {
+                if (now - entry.lastAccess < timeout || !entry.lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    if (!entry.removed && entry.history != null && entry.frozen == null
+                            && entry.history.size() != 0 && entry.history.getJournal() == null
+                            && now - entry.lastAccess >= timeout) {
+                        entry.frozen = entry.history.freeze(compressor);
+                        frozen.increment();
+                        result++;
+                    }
+                } catch (RuntimeException e) {
+                    // 凍結に失敗した履歴はそのまま残し、他の履歴の凍結を続けます。
+                    // 一つの失敗で定期的な呼び出しが止まらないようにするためです
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 凍結するまでの時間を返します。
+     * @return 時間
+     */
+    public Duration getIdleTimeout() {
+        return Duration.ofNanos(idleTimeout);
+    }
+
+    /**
+     * 凍結するまでの時間を変更します。
+     * @param idleTimeout 最後に使用されてから凍結するまでの時間
+     * @exception IllegalArgumentException 負の時間が指定された場合
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        if (idleTimeout.isNegative()) {
+            throw new IllegalArgumentException("idle timeout is negative.");
+        }
+        this.idleTimeout = idleTimeout.toNanos();
+    }
+
+    /**
+     * 凍結したバイト列の圧縮器を返します。
+     * @return 圧縮器。圧縮しない場合はnull
+     */
+    public SnapshotCompressor getFreezeCompressor() {
+        return freezeCompressor;
+    }
+
+    /**
+     * 凍結したバイト列の圧縮器を変更します。デフォルトは{@link DeflateCompressor}です。
+     * @param freezeCompressor 圧縮器。nullの場合は圧縮しません
+     */
+    public void setFreezeCompressor(SnapshotCompressor freezeCompressor) {
+        this.freezeCompressor = freezeCompressor;
+    }
+
+    /**
+     * 管理している履歴を集計します。他のスレッドが操作している履歴は、その完了を待ってから集計します。
+     * @return 集計値
+     */
+    public Statistics getStatistics() {
+        int histories = 0;
+        int frozenHistories = 0;
+        long elements = 0;
+        long retainedBytes = 0;
+        long frozenBytes = 0;
+        for (Shard<K> shard: shards) {
+            for (Entry entry: entriesOf(shard)) {
+                entry.lock.lock();
+                try {
+                    if (entry.removed || entry.history == null) {
+                        continue;
+                    }
+                    histories++;
+                    if (entry.frozen != null) {
+                        frozenHistories++;
+                        elements += entry.frozen.size();
+                        frozenBytes += entry.frozen.length();
+                    } else {
+                        elements += entry.history.size();
+                        retainedBytes += entry.history.getRetainedBytes();
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+        }
+        return new Statistics(histories, frozenHistories, elements, retainedBytes, frozenBytes,
+                created.sum(), frozen.sum(), thawed.sum());
+    }
+
+    private List<Entry> entriesOf(Shard<K> shard) {
+        shard.lock.lock();
+        try {
+            return new ArrayList<>(shard.entries.values());
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private Shard<K> shardOf(K key) {
+        int h = Objects.hashCode(key);
+        h ^= h >>> 16;
+        return shards[h & (shards.length - 1)];
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.sirrop.historyj2;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A {@link Spliterator} over the elements of a random access history.
+ * <p>
+ *     Splitting halves the remaining index range, so a parallel stream visits every element
+ *     exactly once and each element is read by a single call to the accessor.
+ *     The history must not be modified while the spliterator is in use.
+ * </p>
+ * @param <T> the type of elements
+ */
+final class IndexedSpliterator<T> implements Spliterator<T> {
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | NONNULL;
+
+    private final IntFunction<? extends T> accessor;
+    private int index;
+    private final int fence;
+
+    /**
+     * @param accessor returns the element at the specified index
+     * @param origin the first index
+     * @param fence one past the last index
+     */
+    IndexedSpliterator(IntFunction<? extends T> accessor, int origin, int fence) {
+        this.accessor = accessor;
+        index = origin;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        if (index >= fence) {
+            return false;
+        }
+        action.accept(accessor.apply(index++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        int i = index;
+        index = fence;
+        for (; i < fence; i++) {
+            action.accept(accessor.apply(i));
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int middle = (index + fence) >>> 1;
+        if (middle <= index) {
+            return null;
+        }
+        Spliterator<T> prefix = new IndexedSpliterator<>(accessor, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.sirrop.historyj2;
+
+import java.util.OptionalInt;
+
+/**
+ * A primitive sibling of {@link History} for {@code int} values.
+ * <p>
+ *     The capacity and index contract is the same as {@link History},
+ *     but values are neither boxed nor {@code null}.
+ * </p>
+ */
+public interface IntHistory {
+    /**
+     * Registers the specified value.
+     * @param record value to be registered
+     */
+    void add(int record);
+
+    /**
+     * Removes all of the values from this history.
+     * The history will be empty after this method returns.
+     */
+    void clear();
+
+    /**
+     * Returns the currently referenced value.
+     * @return the currently referenced value
+     * @exception java.util.NoSuchElementException if no value exists in this history
+     */
+    int currentRecord();
+
+    /**
+     * Returns the index of the currently referenced value.
+     * If no value exists in this history, returns -1.
+     * @return index
+     */
+    int currentIndex();
+
+    /**
+     * Returns the capacity of this history
+     * @return capacity
+     */
+    int getCapacity();
+
+    /**
+     * Changes the capacity of this history
+     * @param capacity the new capacity for this history
+     * @exception IllegalArgumentException if the new capacity is negative or zero
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * Returns the number of values in this history.
+     * This result is not larger than the result of {@link IntHistory#getCapacity()}.
+     * @return the number of values in this history.
+     */
+    int size();
+
+    /**
+     * Returns true if this history can undo otherwise false
+     * @return true or false
+     */
+    boolean canUndo();
+
+    /**
+     * Returns true if this history can redo otherwise false
+     * @return true or false
+     */
+    boolean canRedo();
+
+    /**
+     * Returns the previous value of the current record in this history and sets
+     * the current record to that.
+     * @return the previous value of the current record
+     * @exception IllegalStateException if cannot undo
+     */
+    int undo();
+
+    /**
+     * Returns the next value of the current record in this history
+     * and set the current record to that.
+     * @return the next value of the current record
+     * @exception IllegalStateException if cannot redo
+     */
+    int redo();
+
+    /**
+     * Returns an {@link OptionalInt} describing the previous value
+     * of the current record, or an empty OptionalInt if cannot undo.
+     * @return an OptionalInt describing the previous value of the current record, or an empty OptionalInt if cannot undo.
+     */
+    OptionalInt undoIfCan();
+
+    /**
+     * Returns an {@link OptionalInt} describing the next value
+     * of the current record, or an empty OptionalInt if cannot redo.
+     * @return an OptionalInt describing the next value of the current record, or an empty OptionalInt if cannot redo.
+     */
+    OptionalInt redoIfCan();
+}
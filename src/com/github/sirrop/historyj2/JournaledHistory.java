@@ -0,0 +1,182 @@
+package com.github.sirrop.historyj2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.Objects;
+import java.util.Spliterator;
+
+/**
+ * A {@link History} whose elements are written to a {@link HistoryJournal}.
+ * <p>
+ *     Every change is appended to the journal, so a history created on the same journal
+ *     after a restart has the same elements and the same current record.
+ *     Elements are encoded with the given {@link SnapshotCodec} when they are added and
+ *     decoded lazily from the memory-mapped journal when they are returned.
+ *     Decoded elements are cached by soft references.
+ * </p>
+ * @param <R> the type of elements
+ */
+public class JournaledHistory<R> extends AbstractHistory<R> {
+    private final HistoryJournal journal;
+    private final SnapshotCodec<R> codec;
+    private int capacity;
+
+    public JournaledHistory(HistoryJournal journal, SnapshotCodec<R> codec, int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.journal = Objects.requireNonNull(journal);
+        this.codec = Objects.requireNonNull(codec);
+        capacity = initialCapacity;
+        journal.setSegmentCapacity(initialCapacity);
+        // The journal may have been written with a larger capacity
+        trimToCapacity();
+    }
+
+    public JournaledHistory(HistoryJournal journal, SnapshotCodec<R> codec) {
+        this(journal, codec, 100);
+    }
+
+    @Override
+    public void add(R record) {
+        Objects.requireNonNull(record);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            codec.write(record, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HistoryJournal.Entry entry = journal.put(journal.nextSeq(), out.toByteArray());
+        entry.cache = new SoftReference<>(record);
+        int evicted = trimToCapacity();
+        for (int i = 0; i < evicted; i++) {
+            fireEvict();
+        }
+        fireAdd();
+    }
+
+    /**
+     * Discards the oldest elements beyond the capacity and records the trim in the journal.
+     * @return the number of discarded elements
+     */
+    private int trimToCapacity() {
+        int evicted = journal.size() - capacity;
+        if (evicted <= 0) {
+            return 0;
+        }
+        journal.trim(journal.get(evicted).seq);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        journal.clear();
+        fireClear();
+    }
+
+    @Override
+    public R currentRecord() {
+        int index = journal.currentIndex();
+        return index == -1 ? null : decode(journal.get(index));
+    }
+
+    @Override
+    public int currentIndex() {
+        return journal.currentIndex();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     As with {@link LinkedHistory}, elements beyond the new capacity are
+     *     evicted by the next {@link #add(Object)}.
+     * </p>
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.capacity = capacity;
+        journal.setSegmentCapacity(capacity);
+    }
+
+    @Override
+    public int size() {
+        return journal.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     Elements whose decoded value is no longer cached are decoded as they are visited.
+     * </p>
+     */
+    @Override
+    public Spliterator<R> spliterator() {
+        return new IndexedSpliterator<>(i -> decode(journal.get(i)), 0, journal.size());
+    }
+
+    @Override
+    public R undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        R result = move(currentIndex() - 1);
+        fireUndo();
+        return result;
+    }
+
+    @Override
+    public R redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        R result = move(currentIndex() + 1);
+        fireRedo();
+        return result;
+    }
+
+    @Override
+    public R jumpTo(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        R result = move(index);
+        fireJump();
+        return result;
+    }
+
+    private R move(int index) {
+        HistoryJournal.Entry entry = journal.get(index);
+        journal.moveTo(entry.seq);
+        return decode(entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private R decode(HistoryJournal.Entry entry) {
+        if (entry.cache instanceof SoftReference) {
+            R cached = ((SoftReference<R>) entry.cache).get();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        R result;
+        try {
+            result = codec.read(new ByteBufferInputStream(entry.buffer()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        entry.cache = new SoftReference<>(result);
+        return result;
+    }
+}
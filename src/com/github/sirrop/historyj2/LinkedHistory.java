@@ -2,7 +2,10 @@ package com.github.sirrop.historyj2;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 public class LinkedHistory<R> extends AbstractHistory<R> {
     private int capacity;
@@ -34,13 +37,16 @@ public class LinkedHistory<R> extends AbstractHistory<R> {
         redoList.clear();
         while (size() > capacity) {
             undoList.remove(0);
+            fireEvict();
         }
+        fireAdd();
     }
 
     @Override
     public void clear() {
         undoList.clear();
         redoList.clear();
+        fireClear();
     }
 
     @Override
@@ -74,6 +80,27 @@ public class LinkedHistory<R> extends AbstractHistory<R> {
         return undoList.size() + redoList.size();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     The elements are copied into an array in a single pass over the lists,
+     *     so the spliterator can be split without walking the linked lists again.
+     * </p>
+     */
+    @Override
+    public Spliterator<R> spliterator() {
+        Object[] elements = new Object[size()];
+        int i = 0;
+        for (R record: undoList) {
+            elements[i++] = record;
+        }
+        ListIterator<R> redo = redoList.listIterator(redoList.size());
+        while (redo.hasPrevious()) {
+            elements[i++] = redo.previous();
+        }
+        return Spliterators.spliterator(elements, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
     @Override
     public R undo() {
         if (!canUndo()) {
@@ -81,6 +108,7 @@ public class LinkedHistory<R> extends AbstractHistory<R> {
         }
         var old = undoList.remove(currentIndex());
         redoList.add(old);
+        fireUndo();
         return currentRecord();
     }
 
@@ -91,6 +119,39 @@ public class LinkedHistory<R> extends AbstractHistory<R> {
         }
         var result = redoList.remove(redoList.size() - 1);
         undoList.add(result);
+        fireRedo();
         return result;
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     The elements between the current record and the target are moved between
+     *     the undo and redo lists in a single pass, and one jump event is fired.
+     * </p>
+     */
+    @Override
+    public R jumpTo(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (index < currentIndex()) {
+            moveReversed(undoList.subList(index + 1, undoList.size()), redoList);
+        } else if (index > currentIndex()) {
+            moveReversed(redoList.subList(size() - 1 - index, redoList.size()), undoList);
+        }
+        fireJump();
+        return currentRecord();
+    }
+
+    /**
+     * Appends the elements of the source to the target in reverse order and removes them from the source.
+     */
+    private static <R> void moveReversed(List<R> source, List<R> target) {
+        ListIterator<R> iterator = source.listIterator(source.size());
+        while (iterator.hasPrevious()) {
+            target.add(iterator.previous());
+        }
+        source.clear();
+    }
 }
@@ -0,0 +1,254 @@
+package com.github.sirrop.historyj2;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+
+/**
+ * A {@link History} of {@link UndoableOperation}s.
+ * <p>
+ *     Each element is the operation that led to a state, so the memory used per step
+ *     is the size of the operation rather than the size of the state.
+ *     {@link #undo()} reverts the current operation and {@link #redo()} applies the next one.
+ *     When the first operation is added, an origin element representing the initial state is
+ *     inserted in front of it, so a history with one operation has two elements and can undo.
+ *     Capacity, cursor, {@link #canUndo()} and {@link #canRedo()} behave as in {@link RingHistory};
+ *     the oldest remaining element acts as the origin after eviction.
+ * </p>
+ * <p>
+ *     An added operation is merged into the element added just before it when
+ *     {@link UndoableOperation#merge(UndoableOperation)} returns a non-null operation.
+ *     Operations are never merged across {@link #undo()}, {@link #redo()} or {@link #jumpTo(int)}.
+ * </p>
+ * <p>
+ *     {@link #setCheckpoints(int, Supplier)} stores a full {@link Checkpoint} every given number of
+ *     elements. {@link #jumpTo(int)} restores the checkpoint nearest to the target when that is closer
+ *     than the current element, so a long jump replays at most the checkpoint interval of operations.
+ * </p>
+ */
+public class OperationHistory extends AbstractHistory<UndoableOperation> {
+    /**
+     * A full copy of the state, captured by {@link OperationHistory} every few elements.
+     */
+    public interface Checkpoint {
+        /**
+         * Restores the state at the time this checkpoint was captured.
+         */
+        void restore();
+    }
+
+    private static final UndoableOperation ORIGIN = new UndoableOperation() {
+        @Override
+        public void apply() {
+        }
+
+        @Override
+        public void revert() {
+        }
+
+        @Override
+        public String toString() {
+            return "origin";
+        }
+    };
+
+    private static final class Entry {
+        final UndoableOperation operation;
+        final Checkpoint checkpoint;
+
+        Entry(UndoableOperation operation, Checkpoint checkpoint) {
+            this.operation = operation;
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    private final RingHistory<Entry> delegate;
+    private int checkpointInterval;
+    private Supplier<? extends Checkpoint> checkpointSupplier;
+    private long added;
+    private boolean mergeable;
+
+    public OperationHistory(int initialCapacity) {
+        delegate = new RingHistory<>(initialCapacity, null, this);
+    }
+
+    public OperationHistory() {
+        this(100);
+    }
+
+    /**
+     * Applies the specified operation and registers it.
+     * @param operation operation to be performed
+     * @exception NullPointerException if the argument is null
+     */
+    public void execute(UndoableOperation operation) {
+        Objects.requireNonNull(operation);
+        operation.apply();
+        add(operation);
+    }
+
+    /**
+     * Registers an operation that has already been applied.
+     * @param record operation to be registered
+     * @exception NullPointerException if the argument is null
+     */
+    @Override
+    public void add(UndoableOperation record) {
+        Objects.requireNonNull(record);
+        if (delegate.size() == 0) {
+            delegate.add(new Entry(ORIGIN, null));
+        }
+        if (mergeable && !canRedo()) {
+            UndoableOperation merged = delegate.currentRecord().operation.merge(record);
+            if (merged != null) {
+                // A checkpoint taken before the merge no longer matches, so it is dropped if checkpoints are disabled
+                Checkpoint checkpoint = delegate.currentRecord().checkpoint == null || checkpointSupplier == null
+                        ? null : checkpointSupplier.get();
+                delegate.set(delegate.currentIndex(), new Entry(merged, checkpoint));
+                return;
+            }
+        }
+        added++;
+        boolean checkpoint = checkpointSupplier != null && added % checkpointInterval == 0;
+        delegate.add(new Entry(record, checkpoint ? checkpointSupplier.get() : null));
+        mergeable = true;
+        fireAdd();
+    }
+
+    /**
+     * Captures a checkpoint every {@code interval} added operations.
+     * @param interval the number of operations between checkpoints
+     * @param supplier captures the current state, or null to stop capturing checkpoints
+     * @exception IllegalArgumentException if the interval is negative or zero
+     */
+    public void setCheckpoints(int interval, Supplier<? extends Checkpoint> supplier) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval is negative or zero.");
+        }
+        checkpointInterval = interval;
+        checkpointSupplier = supplier;
+    }
+
+    /**
+     * Returns the number of operations between checkpoints.
+     * @return the interval, or 0 if checkpoints are not captured
+     */
+    public int getCheckpointInterval() {
+        return checkpointSupplier == null ? 0 : checkpointInterval;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        mergeable = false;
+        fireClear();
+    }
+
+    @Override
+    public UndoableOperation currentRecord() {
+        Entry entry = delegate.currentRecord();
+        return entry == null ? null : entry.operation;
+    }
+
+    @Override
+    public int currentIndex() {
+        return delegate.currentIndex();
+    }
+
+    @Override
+    public int getCapacity() {
+        return delegate.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        delegate.setCapacity(capacity);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Spliterator<UndoableOperation> spliterator() {
+        return new IndexedSpliterator<>(i -> delegate.get(i).operation, 0, delegate.size());
+    }
+
+    /**
+     * Reverts the current operation and moves to the previous element.
+     * @return the operation of the new current element
+     * @exception IllegalStateException if this history can't undo
+     */
+    @Override
+    public UndoableOperation undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        mergeable = false;
+        delegate.currentRecord().operation.revert();
+        UndoableOperation result = delegate.undo().operation;
+        fireUndo();
+        return result;
+    }
+
+    /**
+     * Moves to the next element and applies its operation.
+     * @return the applied operation
+     * @exception IllegalStateException if this history can't redo
+     */
+    @Override
+    public UndoableOperation redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        mergeable = false;
+        Entry entry = delegate.redo();
+        entry.operation.apply();
+        fireRedo();
+        return entry.operation;
+    }
+
+    /**
+     * Moves to the element at the specified index, reverting or applying the operations
+     * in between, or starting from the nearest checkpoint if that is closer.
+     * @param index index of the element
+     * @return the operation of the new current element
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public UndoableOperation jumpTo(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        mergeable = false;
+        int from = currentIndex();
+        int distance = Math.abs(index - from);
+        for (int d = 0; d < distance - 1; d++) {
+            if (hasCheckpoint(index - d)) {
+                from = index - d;
+                break;
+            }
+            if (hasCheckpoint(index + d)) {
+                from = index + d;
+                break;
+            }
+        }
+        if (from != currentIndex()) {
+            delegate.get(from).checkpoint.restore();
+        }
+        for (int i = from; i > index; i--) {
+            delegate.get(i).operation.revert();
+        }
+        for (int i = from + 1; i <= index; i++) {
+            delegate.get(i).operation.apply();
+        }
+        UndoableOperation result = delegate.jumpTo(index).operation;
+        fireJump();
+        return result;
+    }
+
+    private boolean hasCheckpoint(int index) {
+        return index >= 0 && index < size() && delegate.get(index).checkpoint != null;
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.sirrop.historyj2;
+
+import com.github.sirrop.historyj2.annotation.History;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 生成された{@link Snapshotter}がないクラスに使用する実装です。
+ * {@link History.Tracked}と同じ規則で選んだフィールドを、{@link MethodHandle}で配列にコピーします。
+ * finalの配列は参照を変えずに、内容を書き戻します。
+ * クラスごとに一度だけ作成され、{@link ClassValue}にキャッシュされます。
+ */
+final class ReflectiveSnapshotter implements Snapshotter<Object> {
+    private static final ClassValue<ReflectiveSnapshotter> SNAPSHOTTERS = new ClassValue<>() {
+        @Override
+        protected ReflectiveSnapshotter computeValue(Class<?> type) {
+            return new ReflectiveSnapshotter(type);
+        }
+    };
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final int SKIPPED = Modifier.STATIC | Modifier.TRANSIENT;
+
+    private final MethodHandle[] getters;
+    private final MethodHandle[] setters;
+    private final boolean[] arrays;
+    private final boolean[] primitives;
+
+    private ReflectiveSnapshotter(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field: c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if ((modifiers & SKIPPED) == 0 && !field.isAnnotationPresent(History.Exclude.class)
+                        && (!Modifier.isFinal(modifiers) || field.getType().isArray())) {
+                    fields.add(field);
+                }
+            }
+        }
+        getters = new MethodHandle[fields.size()];
+        setters = new MethodHandle[fields.size()];
+        arrays = new boolean[fields.size()];
+        primitives = new boolean[fields.size()];
+        try {
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                field.setAccessible(true);
+                getters[i] = lookup.unreflectGetter(field).asType(GETTER);
+                // finalの配列は書き込まず、内容をコピーします
+                setters[i] = Modifier.isFinal(field.getModifiers()) ? null : lookup.unreflectSetter(field).asType(SETTER);
+                arrays[i] = field.getType().isArray();
+                primitives[i] = field.getType().isPrimitive();
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ReflectiveSnapshotter of(Class<?> type) {
+        return SNAPSHOTTERS.get(type);
+    }
+
+    /**
+     * コピーするフィールドの数を返します。
+     */
+    int size() {
+        return getters.length;
+    }
+
+    /**
+     * 指定した番号のフィールドの値を返します。配列は複製されます。
+     */
+    Object get(Object target, int index) {
+        try {
+            return copyOf((Object) getters[index].invokeExact(target), index);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 指定した番号のフィールドに値を書き込みます。配列は複製されます。
+     * finalの配列には内容をコピーします。
+     */
+    void set(Object target, int index, Object value) {
+        try {
+            write(target, index, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 指定した番号のフィールドの値が等しいかどうかを返します。
+     * 配列は内容を、基本型は値を、それ以外は参照を比較します。
+     */
+    boolean isSame(int index, Object a, Object b) {
+        if (arrays[index]) {
+            return Objects.deepEquals(a, b);
+        }
+        return a == b || primitives[index] && a.equals(b);
+    }
+
+    @Override
+    public Object capture(Object target) {
+        Object[] state = new Object[getters.length];
+        try {
+            for (int i = 0; i < getters.length; i++) {
+                state[i] = copyOf((Object) getters[i].invokeExact(target), i);
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return state;
+    }
+
+    @Override
+    public void restore(Object target, Object snapshot) {
+        Object[] state = (Object[]) snapshot;
+        try {
+            for (int i = 0; i < setters.length; i++) {
+                write(target, i, state[i]);
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void write(Object target, int index, Object value) throws Throwable {
+        if (setters[index] != null) {
+            setters[index].invokeExact(target, copyOf(value, index));
+            return;
+        }
+        Object array = (Object) getters[index].invokeExact(target);
+        if (array != null && value != null) {
+            System.arraycopy(value, 0, array, 0, Math.min(Array.getLength(array), Array.getLength(value)));
+        }
+    }
+
+    private Object copyOf(Object value, int index) {
+        if (!arrays[index] || value == null) {
+            return value;
+        }
+        int length = Array.getLength(value);
+        Object result = Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, result, 0, length);
+        return result;
+    }
+}
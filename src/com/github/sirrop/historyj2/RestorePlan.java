@@ -0,0 +1,113 @@
+package com.github.sirrop.historyj2;
+
+import com.github.sirrop.historyj2.annotation.History;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 復元したオブジェクトの状態を元のオブジェクトへ書き戻す手順です。
+ *
+ * <p>
+ *     クラスごとに一度だけ作成され、{@link ClassValue}にキャッシュされます。
+ *     {@link History.Update}を付与したメソッドがあればそのメソッドを、
+ *     なければスーパークラスを含むすべてのインスタンスフィールドをコピーする
+ *     {@link MethodHandle}を保持します。staticフィールドはコピーしません。
+ * </p>
+ */
+final class RestorePlan {
+    private static final ClassValue<RestorePlan> PLANS = new ClassValue<>() {
+        @Override
+        protected RestorePlan computeValue(Class<?> type) {
+            try {
+                return new RestorePlan(type);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final MethodHandle[] updates;
+    private final MethodHandle[] getters;
+    private final MethodHandle[] setters;
+
+    private RestorePlan(Class<?> type) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        updates = findUpdates(lookup, type);
+        List<MethodHandle> getters = new ArrayList<>();
+        List<MethodHandle> setters = new ArrayList<>();
+        if (updates.length == 0) {
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field: c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    getters.add(lookup.unreflectGetter(field).asType(GETTER));
+                    setters.add(lookup.unreflectSetter(field).asType(SETTER));
+                }
+            }
+        }
+        this.getters = getters.toArray(new MethodHandle[0]);
+        this.setters = setters.toArray(new MethodHandle[0]);
+    }
+
+    /**
+     * 最も派生したクラスから順に{@link History.Update}を付与したメソッドを探します。
+     */
+    private static MethodHandle[] findUpdates(MethodHandles.Lookup lookup, Class<?> type) throws IllegalAccessException {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            List<MethodHandle> result = new ArrayList<>();
+            for (Method method: c.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(History.Update.class)) {
+                    method.setAccessible(true);
+                    result.add(lookup.unreflect(method).asType(SETTER));
+                }
+            }
+            if (!result.isEmpty()) {
+                return result.toArray(new MethodHandle[0]);
+            }
+        }
+        return new MethodHandle[0];
+    }
+
+    static RestorePlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    /**
+     * restoredの状態をtargetに書き戻します。
+     * @exception InvocationTargetException {@link History.Update}を付与したメソッドが例外を投げた場合
+     */
+    void restore(Object target, Object restored) throws InvocationTargetException {
+        if (updates.length != 0) {
+            for (MethodHandle update: updates) {
+                try {
+                    update.invokeExact(target, restored);
+                } catch (Throwable e) {
+                    throw new InvocationTargetException(e);
+                }
+            }
+            return;
+        }
+        try {
+            for (int i = 0; i < getters.length; i++) {
+                setters[i].invokeExact(target, (Object) getters[i].invokeExact(restored));
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.github.sirrop.historyj2;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link History} backed by a single circular array.
+ * <p>
+ *     Elements are kept in add order between {@code head} and {@code head + size}.
+ *     The elements after the current record are the redo entries.
+ *     {@link #add(Object)}, {@link #undo()}, {@link #redo()}, random access and
+ *     eviction of the oldest element are all constant time.
+ * </p>
+ * <p>
+ *     The backing array grows on demand up to the capacity, so a history with
+ *     a large capacity does not allocate it up front.
+ * </p>
+ * @param <R> the type of elements
+ */
+public class RingHistory<R> extends AbstractHistory<R> {
+    private static final int INITIAL_LENGTH = 16;
+
+    private final Consumer<? super R> onRemove;
+    private final AbstractHistory<?> owner;
+    private int capacity;
+    private Object[] elements;
+    private int head;
+    private int size;
+    private int cursor = -1;
+
+    /**
+     * @param onRemove called with every element that leaves this history,
+     *                 whether it is evicted, dropped from the redo entries or cleared
+     * @param owner the history whose listeners are notified of evictions
+     */
+    RingHistory(int initialCapacity, Consumer<? super R> onRemove, AbstractHistory<?> owner) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.onRemove = onRemove;
+        this.owner = owner == null ? this : owner;
+        capacity = initialCapacity;
+        elements = new Object[Math.min(initialCapacity, INITIAL_LENGTH)];
+    }
+
+    public RingHistory(int initialCapacity) {
+        this(initialCapacity, null, null);
+    }
+
+    public RingHistory() {
+        this(100);
+    }
+
+    @SuppressWarnings("unchecked")
+    R get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (R) elements[physical(index)];
+    }
+
+    @Override
+    public void add(R record) {
+        Objects.requireNonNull(record);
+        for (int i = cursor + 1; i < size; i++) {
+            remove(physical(i));
+        }
+        size = cursor + 1;
+        while (size >= capacity) {
+            remove(head);
+            head = physical(1);
+            size--;
+            owner.fireEvict();
+        }
+        if (elements.length > capacity) {
+            resize(capacity);
+        } else if (size == elements.length) {
+            resize(Math.min(capacity, elements.length * 2));
+        }
+        elements[physical(size)] = record;
+        size++;
+        cursor = size - 1;
+        fireAdd();
+    }
+
+    /**
+     * Replaces the element at the specified index.
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    void set(int index, R record) {
+        Objects.requireNonNull(record);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int i = physical(index);
+        remove(i);
+        elements[i] = record;
+    }
+
+    /**
+     * Evicts the oldest element. If it is the current record,
+     * the next element becomes the current record.
+     * @exception NoSuchElementException if this history is empty
+     */
+    void removeFirst() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        remove(head);
+        head = physical(1);
+        size--;
+        if (cursor > 0 || size == 0) {
+            cursor--;
+        }
+        owner.fireEvict();
+    }
+
+    @Override
+    public void clear() {
+        if (onRemove != null) {
+            for (int i = 0; i < size; i++) {
+                remove(physical(i));
+            }
+        }
+        elements = new Object[Math.min(capacity, INITIAL_LENGTH)];
+        head = 0;
+        size = 0;
+        cursor = -1;
+        fireClear();
+    }
+
+    @Override
+    public R currentRecord() {
+        if (cursor == -1) {
+            return null;
+        }
+        return get(cursor);
+    }
+
+    @Override
+    public int currentIndex() {
+        return cursor;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     As with {@link LinkedHistory}, elements beyond the new capacity are
+     *     evicted by the next {@link #add(Object)}.
+     * </p>
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.capacity = capacity;
+        if (elements.length > capacity && size <= capacity) {
+            resize(capacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public R undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        cursor--;
+        fireUndo();
+        return get(cursor);
+    }
+
+    @Override
+    public R redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        cursor++;
+        fireRedo();
+        return get(cursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void remove(int physicalIndex) {
+        R element = (R) elements[physicalIndex];
+        elements[physicalIndex] = null;
+        if (onRemove != null) {
+            onRemove.accept(element);
+        }
+    }
+
+    @Override
+    public R jumpTo(int index) {
+        R result = get(index);
+        cursor = index;
+        fireJump();
+        return result;
+    }
+
+    @Override
+    public Spliterator<R> spliterator() {
+        return new IndexedSpliterator<>(this::get, 0, size);
+    }
+
+    private int physical(int index) {
+        int i = head + index;
+        return i >= elements.length ? i - elements.length : i;
+    }
+
+    private void resize(int length) {
+        Object[] resized = new Object[length];
+        int first = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, resized, 0, first);
+        System.arraycopy(elements, 0, resized, first, size - first);
+        elements = resized;
+        head = 0;
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.sirrop.historyj2;
+
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+
+/**
+ * An {@link IntHistory} backed by a circular {@code int} array.
+ * <p>
+ *     The layout is the same as {@link RingHistory}. No object is allocated
+ *     by {@link #add(int)}, {@link #undo()} and {@link #redo()} except when
+ *     the backing array grows.
+ * </p>
+ */
+public class RingIntHistory implements IntHistory {
+    private static final int INITIAL_LENGTH = 16;
+
+    private int capacity;
+    private int[] elements;
+    private int head;
+    private int size;
+    private int cursor = -1;
+
+    public RingIntHistory(int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        capacity = initialCapacity;
+        elements = new int[Math.min(initialCapacity, INITIAL_LENGTH)];
+    }
+
+    public RingIntHistory() {
+        this(100);
+    }
+
+    int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return elements[physical(index)];
+    }
+
+    @Override
+    public void add(int record) {
+        size = cursor + 1;
+        while (size >= capacity) {
+            head = physical(1);
+            size--;
+        }
+        if (elements.length > capacity) {
+            resize(capacity);
+        } else if (size == elements.length) {
+            resize(Math.min(capacity, elements.length * 2));
+        }
+        elements[physical(size)] = record;
+        size++;
+        cursor = size - 1;
+    }
+
+    @Override
+    public void clear() {
+        elements = new int[Math.min(capacity, INITIAL_LENGTH)];
+        head = 0;
+        size = 0;
+        cursor = -1;
+    }
+
+    @Override
+    public int currentRecord() {
+        if (cursor == -1) {
+            throw new NoSuchElementException("No value present");
+        }
+        return get(cursor);
+    }
+
+    @Override
+    public int currentIndex() {
+        return cursor;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.capacity = capacity;
+        if (elements.length > capacity && size <= capacity) {
+            resize(capacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean canUndo() {
+        return cursor > 0;
+    }
+
+    @Override
+    public boolean canRedo() {
+        return cursor != -1 && cursor < size - 1;
+    }
+
+    @Override
+    public int undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        cursor--;
+        return get(cursor);
+    }
+
+    @Override
+    public int redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        cursor++;
+        return get(cursor);
+    }
+
+    @Override
+    public OptionalInt undoIfCan() {
+        if (canUndo()) {
+            return OptionalInt.of(undo());
+        } else {
+            return OptionalInt.empty();
+        }
+    }
+
+    @Override
+    public OptionalInt redoIfCan() {
+        if (canRedo()) {
+            return OptionalInt.of(redo());
+        } else {
+            return OptionalInt.empty();
+        }
+    }
+
+    private int physical(int index) {
+        int i = head + index;
+        return i >= elements.length ? i - elements.length : i;
+    }
+
+    private void resize(int length) {
+        int[] resized = new int[length];
+        int first = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, resized, 0, first);
+        System.arraycopy(elements, 0, resized, first, size - first);
+        elements = resized;
+        head = 0;
+    }
+}
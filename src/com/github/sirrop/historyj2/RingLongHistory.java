@@ -0,0 +1,160 @@
+package com.github.sirrop.historyj2;
+
+import java.util.NoSuchElementException;
+import java.util.OptionalLong;
+
+/**
+ * A {@link LongHistory} backed by a circular {@code long} array.
+ * <p>
+ *     The layout is the same as {@link RingHistory}. No object is allocated
+ *     by {@link #add(long)}, {@link #undo()} and {@link #redo()} except when
+ *     the backing array grows.
+ * </p>
+ */
+public class RingLongHistory implements LongHistory {
+    private static final int INITIAL_LENGTH = 16;
+
+    private int capacity;
+    private long[] elements;
+    private int head;
+    private int size;
+    private int cursor = -1;
+
+    public RingLongHistory(int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        capacity = initialCapacity;
+        elements = new long[Math.min(initialCapacity, INITIAL_LENGTH)];
+    }
+
+    public RingLongHistory() {
+        this(100);
+    }
+
+    long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return elements[physical(index)];
+    }
+
+    @Override
+    public void add(long record) {
+        size = cursor + 1;
+        while (size >= capacity) {
+            head = physical(1);
+            size--;
+        }
+        if (elements.length > capacity) {
+            resize(capacity);
+        } else if (size == elements.length) {
+            resize(Math.min(capacity, elements.length * 2));
+        }
+        elements[physical(size)] = record;
+        size++;
+        cursor = size - 1;
+    }
+
+    @Override
+    public void clear() {
+        elements = new long[Math.min(capacity, INITIAL_LENGTH)];
+        head = 0;
+        size = 0;
+        cursor = -1;
+    }
+
+    @Override
+    public long currentRecord() {
+        if (cursor == -1) {
+            throw new NoSuchElementException("No value present");
+        }
+        return get(cursor);
+    }
+
+    @Override
+    public int currentIndex() {
+        return cursor;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.capacity = capacity;
+        if (elements.length > capacity && size <= capacity) {
+            resize(capacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean canUndo() {
+        return cursor > 0;
+    }
+
+    @Override
+    public boolean canRedo() {
+        return cursor != -1 && cursor < size - 1;
+    }
+
+    @Override
+    public long undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        cursor--;
+        return get(cursor);
+    }
+
+    @Override
+    public long redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        cursor++;
+        return get(cursor);
+    }
+
+    @Override
+    public OptionalLong undoIfCan() {
+        if (canUndo()) {
+            return OptionalLong.of(undo());
+        } else {
+            return OptionalLong.empty();
+        }
+    }
+
+    @Override
+    public OptionalLong redoIfCan() {
+        if (canRedo()) {
+            return OptionalLong.of(redo());
+        } else {
+            return OptionalLong.empty();
+        }
+    }
+
+    private int physical(int index) {
+        int i = head + index;
+        return i >= elements.length ? i - elements.length : i;
+    }
+
+    private void resize(int length) {
+        long[] resized = new long[length];
+        int first = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, resized, 0, first);
+        System.arraycopy(elements, 0, resized, first, size - first);
+        elements = resized;
+        head = 0;
+    }
+}
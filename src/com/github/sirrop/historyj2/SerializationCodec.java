@@ -0,0 +1,161 @@
+package com.github.sirrop.historyj2;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+
+/**
+ * {@link ObjectOutputStream}, {@link ObjectInputStream}を使用するコーデックです。
+ *
+ * <p>
+ *     ストリームの作成には内部バッファやハンドル表の確保が伴うため、スレッドごとに一組のストリームを
+ *     使い回します。書き込みではストリームヘッダを直接書き込んでからオブジェクトを書き込み、
+ *     最後に{@link ObjectOutputStream#reset()}で参照を手放すため、新しいストリームで書き込んだ場合と
+ *     同じバイト列になります。読み込みではヘッダの代わりにリセットの印を渡し、前回の参照を手放させます。
+ *     直列化の途中で例外が発生したストリームは破棄されます。
+ * </p>
+ */
+final class SerializationCodec implements SnapshotCodec<Object> {
+    static final SerializationCodec INSTANCE = new SerializationCodec();
+
+    private static final byte[] HEADER = {
+            (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8), (byte) ObjectStreamConstants.STREAM_MAGIC,
+            (byte) (ObjectStreamConstants.STREAM_VERSION >>> 8), (byte) ObjectStreamConstants.STREAM_VERSION
+    };
+
+    /**
+     * 書き込み先を差し替えられる出力です。
+     */
+    private static final class Sink extends OutputStream {
+        OutputStream out = OutputStream.nullOutputStream();
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * 読み込み元を差し替えられる入力です。差し替えた直後はヘッダの代わりにリセットの印を返します。
+     */
+    private static final class Source extends InputStream {
+        InputStream in;
+        boolean reset;
+
+        @Override
+        public int read() throws IOException {
+            if (reset) {
+                reset = false;
+                return ObjectStreamConstants.TC_RESET;
+            }
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (reset) {
+                reset = false;
+                b[off] = ObjectStreamConstants.TC_RESET;
+                return 1;
+            }
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (reset ? 1 : 0) + in.available();
+        }
+    }
+
+    private static final class Streams {
+        final Sink sink = new Sink();
+        final Source source = new Source();
+        ObjectOutputStream output;
+        ObjectInputStream input;
+        boolean writing;
+        boolean reading;
+    }
+
+    private static final ThreadLocal<Streams> STREAMS = ThreadLocal.withInitial(Streams::new);
+
+    private SerializationCodec() {}
+
+    @Override
+    public void write(Object value, OutputStream out) throws IOException {
+        Streams streams = STREAMS.get();
+        if (streams.writing) {
+            // writeObjectから再帰的に呼び出された場合
+            ObjectOutputStream stream = new ObjectOutputStream(out);
+            stream.writeObject(value);
+            stream.flush();
+            return;
+        }
+        streams.writing = true;
+        boolean completed = false;
+        try {
+            if (streams.output == null) {
+                streams.output = new ObjectOutputStream(streams.sink);
+                streams.output.flush();
+            }
+            out.write(HEADER);
+            streams.sink.out = out;
+            streams.output.writeObject(value);
+            streams.output.flush();
+            streams.sink.out = OutputStream.nullOutputStream();
+            streams.output.reset();
+            streams.output.flush();
+            completed = true;
+        } finally {
+            if (!completed) {
+                streams.output = null;
+            }
+            streams.sink.out = OutputStream.nullOutputStream();
+            streams.writing = false;
+        }
+    }
+
+    @Override
+    public Object read(InputStream in) throws IOException, ClassNotFoundException {
+        Streams streams = STREAMS.get();
+        if (streams.reading) {
+            return new ObjectInputStream(in).readObject();
+        }
+        for (byte b: HEADER) {
+            if (in.read() != (b & 0xFF)) {
+                throw new IOException("invalid stream header");
+            }
+        }
+        streams.reading = true;
+        boolean completed = false;
+        try {
+            if (streams.input == null) {
+                streams.source.in = new ByteArrayInputStream(HEADER);
+                streams.source.reset = false;
+                streams.input = new ObjectInputStream(streams.source);
+            }
+            streams.source.in = in;
+            streams.source.reset = true;
+            Object result = streams.input.readObject();
+            completed = true;
+            return result;
+        } finally {
+            if (!completed) {
+                streams.input = null;
+            }
+            streams.source.in = null;
+            streams.reading = false;
+        }
+    }
+}
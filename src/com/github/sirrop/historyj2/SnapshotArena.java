@@ -0,0 +1,155 @@
+package com.github.sirrop.historyj2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 直列化結果をヒープ外のメモリに保持する領域です。
+ *
+ * <p>
+ *     一定の大きさのダイレクトバッファ(スラブ)を確保し、先頭から順に割り当てます。
+ *     スラブ上のすべての割り当てが{@link Block#release()}で解放されると、そのスラブは
+ *     再利用されます。再利用されずに残ったスラブは{@link #trim()}で手放すことが出来ます。
+ *     スラブより大きい直列化結果には専用のバッファが割り当てられます。
+ * </p>
+ * <p>
+ *     複数の{@link BinaryHistory}で共有することが出来ます。
+ * </p>
+ */
+public class SnapshotArena {
+    /**
+     * 領域内の直列化結果です。
+     */
+    static final class Block {
+        private final SnapshotArena arena;
+        private final Slab slab;
+        private final int offset;
+        private final int length;
+
+        private Block(SnapshotArena arena, Slab slab, int offset, int length) {
+            this.arena = arena;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * 内容を参照する読み込み専用のバッファを返します。
+         */
+        ByteBuffer buffer() {
+            return slab.buffer.duplicate().position(offset).limit(offset + length).slice().asReadOnlyBuffer();
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[length];
+            buffer().get(result);
+            return result;
+        }
+
+        void release() {
+            arena.release(this);
+        }
+    }
+
+    private static final class Slab {
+        final ByteBuffer buffer;
+        int position;
+        int live;
+
+        Slab(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    private final int slabSize;
+    private final Deque<Slab> free = new ArrayDeque<>();
+    private Slab current;
+    private long allocatedBytes;
+    private long reservedBytes;
+
+    public SnapshotArena(int slabSize) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slab size is negative or zero.");
+        }
+        this.slabSize = slabSize;
+    }
+
+    public SnapshotArena() {
+        this(1 << 20);
+    }
+
+    synchronized Block allocate(byte[] data) {
+        Slab slab;
+        if (data.length > slabSize) {
+            slab = new Slab(data.length);
+            reservedBytes += data.length;
+        } else {
+            if (current == null || slabSize - current.position < data.length) {
+                if (current != null && current.live == 0) {
+                    current.position = 0;
+                } else {
+                    current = free.isEmpty() ? newSlab() : free.pop();
+                }
+            }
+            slab = current;
+        }
+        Block block = new Block(this, slab, slab.position, data.length);
+        slab.buffer.duplicate().position(slab.position).put(data);
+        slab.position += data.length;
+        slab.live++;
+        allocatedBytes += data.length;
+        return block;
+    }
+
+    private synchronized void release(Block block) {
+        Slab slab = block.slab;
+        slab.live--;
+        allocatedBytes -= block.length;
+        if (slab.live == 0 && slab != current) {
+            if (slab.buffer.capacity() > slabSize) {
+                reservedBytes -= slab.buffer.capacity();
+            } else {
+                slab.position = 0;
+                free.push(slab);
+            }
+        }
+    }
+
+    private Slab newSlab() {
+        reservedBytes += slabSize;
+        return new Slab(slabSize);
+    }
+
+    /**
+     * 使用されていないスラブを手放します。手放したメモリはガベージコレクションの際に解放されます。
+     */
+    public synchronized void trim() {
+        reservedBytes -= (long) free.size() * slabSize;
+        free.clear();
+        if (current != null && current.live == 0) {
+            reservedBytes -= slabSize;
+            current = null;
+        }
+    }
+
+    /**
+     * 割り当てられている直列化結果の合計を返します。
+     * @return バイト数
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * 確保しているヒープ外のメモリの合計を返します。
+     * @return バイト数
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.sirrop.historyj2;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 直列化結果を書き込むスレッドごとのバッファです。
+ *
+ * <p>
+ *     {@link #acquire()}で取得し、使い終わったら{@link #release()}で返します。
+ *     バッファは使い回されるため、直列化のたびに確保されるのは{@link #toByteArray()}が返す
+ *     ちょうどの大きさの配列だけになります。大きな直列化結果で広がったバッファは返却時に手放します。
+ * </p>
+ */
+final class SnapshotBuffer extends OutputStream {
+    private static final int INITIAL_LENGTH = 256;
+    private static final int MAX_RETAINED_LENGTH = 1 << 20;
+    private static final ThreadLocal<SnapshotBuffer> BUFFERS = ThreadLocal.withInitial(SnapshotBuffer::new);
+
+    private byte[] buffer = new byte[INITIAL_LENGTH];
+    private int count;
+    private boolean acquired;
+
+    private SnapshotBuffer() {}
+
+    /**
+     * 現在のスレッドのバッファを返します。すでに使用中の場合は新しいバッファを返します。
+     */
+    static SnapshotBuffer acquire() {
+        SnapshotBuffer result = BUFFERS.get();
+        if (result.acquired) {
+            result = new SnapshotBuffer();
+        }
+        result.acquired = true;
+        return result;
+    }
+
+    void release() {
+        acquired = false;
+        count = 0;
+        if (buffer.length > MAX_RETAINED_LENGTH) {
+            buffer = new byte[INITIAL_LENGTH];
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    int size() {
+        return count;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.sirrop.historyj2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link BinaryHistory}が保持するスナップショットの形式を定義します。
+ *
+ * <p>
+ *     {@link #write(Object, OutputStream)}で書き込んだバイト列から、
+ *     {@link #read(InputStream)}で同じ状態のオブジェクトを作れる必要があります。
+ *     作られたオブジェクトは復元時に元のオブジェクトへ書き戻されます。
+ * </p>
+ * @param <T> the type of snapshot objects
+ * @see SnapshotCodecs
+ */
+public interface SnapshotCodec<T> {
+    /**
+     * オブジェクトの状態を書き込みます。
+     * @param value 書き込むオブジェクト
+     * @param out 書き込み先
+     * @exception IOException 書き込みに失敗した場合
+     */
+    void write(T value, OutputStream out) throws IOException;
+
+    /**
+     * {@link #write(Object, OutputStream)}で書き込まれた状態を読み込みます。
+     * @param in 読み込み元
+     * @return 読み込んだオブジェクト
+     * @exception IOException 読み込みに失敗した場合
+     * @exception ClassNotFoundException 必要なクラスが見つからなかった場合
+     */
+    T read(InputStream in) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,71 @@
+package com.github.sirrop.historyj2;
+
+import java.io.Externalizable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * クラスごとの{@link SnapshotCodec}を管理します。
+ *
+ * <p>
+ *     {@link #forClass(Class)}は次の順に使用するコーデックを決めます。
+ * </p>
+ * <ol>
+ *     <li>{@link #register(Class, SnapshotCodec)}で登録されたコーデック</li>
+ *     <li>{@link Externalizable}を実装したクラスでは、クラス記述子を書き込まずに
+ *     {@link Externalizable#writeExternal(java.io.ObjectOutput)}を直接呼び出すコーデック</li>
+ *     <li>{@link java.io.ObjectOutputStream}による直列化</li>
+ * </ol>
+ */
+public final class SnapshotCodecs {
+    private static final ClassValue<SnapshotCodec<?>> BUILT_IN = new ClassValue<>() {
+        @Override
+        protected SnapshotCodec<?> computeValue(Class<?> type) {
+            if (Externalizable.class.isAssignableFrom(type)) {
+                return ExternalizableCodec.of(type.asSubclass(Externalizable.class));
+            }
+            return SerializationCodec.INSTANCE;
+        }
+    };
+
+    private final Map<Class<?>, SnapshotCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    /**
+     * 指定したクラスのオブジェクトに使うコーデックを登録します。
+     * 登録はクラスが完全に一致する場合にだけ使用されます。
+     * @param type 対象のクラス
+     * @param codec 使用するコーデック
+     * @param <T> 対象のクラスの型
+     * @return このオブジェクト
+     */
+    public <T> SnapshotCodecs register(Class<T> type, SnapshotCodec<T> codec) {
+        codecs.put(Objects.requireNonNull(type), Objects.requireNonNull(codec));
+        return this;
+    }
+
+    /**
+     * 指定したクラスのオブジェクトに使うコーデックを返します。
+     * @param type 対象のクラス
+     * @param <T> 対象のクラスの型
+     * @return コーデック
+     */
+    @SuppressWarnings("unchecked")
+    public <T> SnapshotCodec<T> forClass(Class<T> type) {
+        SnapshotCodec<?> codec = codecs.get(type);
+        if (codec == null) {
+            codec = BUILT_IN.get(type);
+        }
+        return (SnapshotCodec<T>) codec;
+    }
+
+    /**
+     * {@link java.io.ObjectOutputStream}による直列化を使うコーデックを返します。
+     * @param <T> 対象のクラスの型
+     * @return コーデック
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> SnapshotCodec<T> serialization() {
+        return (SnapshotCodec<T>) SerializationCodec.INSTANCE;
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.sirrop.historyj2;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * {@link BinaryHistory}が保持する直列化結果を圧縮します。
+ *
+ * <p>
+ *     {@link #compress(byte[])}と{@link #decompress(byte[])}は複数のスレッドから
+ *     同時に呼び出されることがあります。
+ * </p>
+ * @see DeflateCompressor
+ * @see BinaryHistory#setCompressor(SnapshotCompressor, int)
+ */
+public interface SnapshotCompressor {
+    /**
+     * バイト列を圧縮します。
+     * @param data 圧縮するバイト列
+     * @return 圧縮したバイト列
+     */
+    byte[] compress(byte[] data);
+
+    /**
+     * {@link #compress(byte[])}で圧縮したバイト列を元に戻します。
+     * @param data 圧縮したバイト列
+     * @return 元のバイト列
+     * @exception IOException バイト列が壊れている場合
+     */
+    byte[] decompress(byte[] data) throws IOException;
+
+    /**
+     * 指定した直列化結果に適した圧縮器を返します。
+     * 返された圧縮器で圧縮したバイト列は、返された圧縮器でだけ元に戻すことが出来ます。
+     * デフォルトではこのオブジェクトをそのまま返します。
+     * @param samples 履歴の最初に追加された要素の直列化結果
+     * @return 圧縮器
+     */
+    default SnapshotCompressor train(List<byte[]> samples) {
+        return this;
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.sirrop.historyj2;
+
+import com.github.sirrop.historyj2.annotation.History;
+
+import java.util.Objects;
+import java.util.Spliterator;
+
+/**
+ * {@link Snapshotter}を使用した履歴オブジェクトです。{@link SnapshotHistory#undo()}, {@link SnapshotHistory#redo()}を
+ * 使用すると、登録する際に使用したオブジェクトの状態を登録した時点の状態に戻します。
+ *
+ * <p>
+ *     {@link BinaryHistory}と異なり直列化は行わず、フィールドの値をそのままコピーします。
+ *     {@link History.Tracked}をつけたクラスではコンパイル時に生成されたクラスがコピーを行うため、
+ *     リフレクションも使用しません。対象のクラスは{@link java.io.Serializable}を実装する必要がありません。
+ *     参照型のフィールドは参照だけがコピーされるため、フィールドが指すオブジェクトの変更は元に戻りません。
+ * </p>
+ * @param <T> the type of elements
+ * @see Snapshotters
+ */
+public class SnapshotHistory<T> extends AbstractHistory<T> {
+    private static final class Record<T> {
+        final T ref;
+        final Snapshotter<T> snapshotter;
+        final Object state;
+
+        Record(T ref, Snapshotter<T> snapshotter) {
+            this.ref = ref;
+            this.snapshotter = snapshotter;
+            this.state = snapshotter.capture(ref);
+        }
+
+        T restore() {
+            snapshotter.restore(ref, state);
+            return ref;
+        }
+    }
+
+    private final RingHistory<Record<T>> delegate;
+
+    public SnapshotHistory(int initialCapacity) {
+        delegate = new RingHistory<>(initialCapacity, null, this);
+    }
+
+    public SnapshotHistory() {
+        this(100);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void add(T record) {
+        Objects.requireNonNull(record);
+        delegate.add(new Record<>(record, Snapshotters.of((Class<T>) record.getClass())));
+        fireAdd();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        fireClear();
+    }
+
+    @Override
+    public T currentRecord() {
+        Record<T> record = delegate.currentRecord();
+        return record == null ? null : record.ref;
+    }
+
+    @Override
+    public int currentIndex() {
+        return delegate.currentIndex();
+    }
+
+    @Override
+    public int getCapacity() {
+        return delegate.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        delegate.setCapacity(capacity);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return new IndexedSpliterator<>(i -> delegate.get(i).ref, 0, delegate.size());
+    }
+
+    @Override
+    public T undo() {
+        T result = delegate.undo().restore();
+        fireUndo();
+        return result;
+    }
+
+    @Override
+    public T redo() {
+        T result = delegate.redo().restore();
+        fireRedo();
+        return result;
+    }
+
+    /**
+     * 指定した位置の要素に移動し、登録に使用したオブジェクトの状態をその要素の状態に変更します。
+     * @param index index of the element
+     * @return 状態を変更したオブジェクト
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public T jumpTo(int index) {
+        T result = delegate.jumpTo(index).restore();
+        fireJump();
+        return result;
+    }
+}
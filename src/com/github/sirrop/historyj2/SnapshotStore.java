@@ -0,0 +1,170 @@
+package com.github.sirrop.historyj2;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 内容が同じ直列化結果を一つにまとめて保持する領域です。
+ *
+ * <p>
+ *     直列化結果は64ビットのハッシュ値で検索され、内容が一致した場合は既存の配列が共有されます。
+ *     配列ごとに参照数を数え、すべての要素が破棄された時点で領域から取り除きます。
+ *     同じ状態を行き来する履歴や、似たオブジェクトを扱う複数の{@link BinaryHistory}で
+ *     共有することで、同じ内容の配列を何度も保持せずに済みます。
+ * </p>
+ * <p>
+ *     このクラスはスレッドセーフです。
+ * </p>
+ * @see BinaryHistory#setSnapshotStore(SnapshotStore)
+ */
+public class SnapshotStore {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final class Entry {
+        final byte[] data;
+        int references;
+        /** ハッシュ値が衝突した次の要素 */
+        Entry next;
+
+        Entry(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private long lookups;
+    private long hits;
+    private long uniqueBytes;
+    private long logicalBytes;
+
+    /**
+     * 指定した内容の配列を登録し、共有する配列を返します。
+     * 同じ内容の配列が登録されていればその配列を、なければ指定した配列を返します。
+     */
+    synchronized byte[] intern(byte[] data) {
+        lookups++;
+        logicalBytes += data.length;
+        long key = hash(data);
+        Entry head = entries.get(key);
+        for (Entry e = head; e != null; e = e.next) {
+            if (Arrays.equals(e.data, data)) {
+                hits++;
+                e.references++;
+                return e.data;
+            }
+        }
+        Entry entry = new Entry(data);
+        entry.references = 1;
+        entry.next = head;
+        entries.put(key, entry);
+        uniqueBytes += data.length;
+        return data;
+    }
+
+    /**
+     * {@link #intern(byte[])}が返した配列の参照を一つ手放します。
+     */
+    synchronized void release(byte[] data) {
+        logicalBytes -= data.length;
+        long key = hash(data);
+        Entry previous = null;
+        for (Entry e = entries.get(key); e != null; previous = e, e = e.next) {
+            if (e.data != data) {
+                continue;
+            }
+            if (--e.references == 0) {
+                uniqueBytes -= data.length;
+                if (previous != null) {
+                    previous.next = e.next;
+                } else if (e.next != null) {
+                    entries.put(key, e.next);
+                } else {
+                    entries.remove(key);
+                }
+            }
+            return;
+        }
+    }
+
+    static long hash(byte[] data) {
+        long h = PRIME2 ^ data.length;
+        int i = 0;
+        for (; i + Long.BYTES <= data.length; i += Long.BYTES) {
+            h = Long.rotateLeft(h ^ (long) LONGS.get(data, i) * PRIME1, 31) * PRIME2;
+        }
+        for (; i < data.length; i++) {
+            h = Long.rotateLeft(h ^ (data[i] & 0xFFL) * PRIME1, 11) * PRIME2;
+        }
+        h ^= h >>> 33;
+        h *= PRIME1;
+        return h ^ h >>> 29;
+    }
+
+    /**
+     * 登録された配列の数を返します。
+     * @return 配列の数
+     */
+    public synchronized int size() {
+        int result = 0;
+        for (Entry head: entries.values()) {
+            for (Entry e = head; e != null; e = e.next) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 登録を試みた回数を返します。
+     * @return 回数
+     */
+    public synchronized long getLookupCount() {
+        return lookups;
+    }
+
+    /**
+     * 同じ内容の配列が見つかった回数を返します。
+     * @return 回数
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * 同じ内容の配列が見つかった割合を返します。
+     * @return 0以上1以下の値。登録を試みていない場合は0
+     */
+    public synchronized double getHitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * 実際に保持している配列の合計を返します。
+     * @return バイト数
+     */
+    public synchronized long getUniqueBytes() {
+        return uniqueBytes;
+    }
+
+    /**
+     * まとめずに保持した場合の配列の合計を返します。
+     * @return バイト数
+     */
+    public synchronized long getLogicalBytes() {
+        return logicalBytes;
+    }
+
+    /**
+     * まとめずに保持した場合と比べて何分の一になっているかを返します。
+     * @return {@link #getLogicalBytes()}を{@link #getUniqueBytes()}で割った値。保持していない場合は1
+     */
+    public synchronized double getDedupRatio() {
+        return uniqueBytes == 0 ? 1 : (double) logicalBytes / uniqueBytes;
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.sirrop.historyj2;
+
+/**
+ * オブジェクトの状態をコピーし、書き戻します。
+ *
+ * <p>
+ *     {@link com.github.sirrop.historyj2.annotation.History.Tracked}をつけたクラスには
+ *     コンパイル時に実装が生成されます。{@link #capture(Object)}が返すオブジェクトは
+ *     {@link #restore(Object, Object)}に渡す以外の用途には使用できません。
+ * </p>
+ * @param <T> the type of target objects
+ * @see Snapshotters
+ */
+public interface Snapshotter<T> {
+    /**
+     * オブジェクトの状態をコピーします。
+     * @param target コピーするオブジェクト
+     * @return コピーした状態
+     */
+    Object capture(T target);
+
+    /**
+     * {@link #capture(Object)}でコピーした状態をオブジェクトに書き戻します。
+     * @param target 書き戻すオブジェクト
+     * @param snapshot コピーした状態
+     */
+    void restore(T target, Object snapshot);
+}
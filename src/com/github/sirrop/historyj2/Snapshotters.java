@@ -0,0 +1,67 @@
+package com.github.sirrop.historyj2;
+
+import com.github.sirrop.historyj2.annotation.History;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * クラスごとの{@link Snapshotter}を返します。
+ *
+ * <p>
+ *     {@link History.Tracked}をつけたクラスでは、コンパイル時に生成された実装を使用します。
+ *     生成された実装が見つからない場合は、同じ規則でフィールドを選び
+ *     {@link java.lang.invoke.MethodHandle}でコピーする実装を使用します。
+ *     どちらもクラスごとに一度だけ作成されます。
+ * </p>
+ */
+public final class Snapshotters {
+    private static final ClassValue<Snapshotter<?>> SNAPSHOTTERS = new ClassValue<>() {
+        @Override
+        protected Snapshotter<?> computeValue(Class<?> type) {
+            Snapshotter<?> generated = generated(type);
+            return generated != null ? generated : ReflectiveSnapshotter.of(type);
+        }
+    };
+
+    private Snapshotters() {}
+
+    /**
+     * 指定したクラスの{@link Snapshotter}を返します。
+     * @param type 対象のクラス
+     * @param <T> 対象のクラスの型
+     * @return 生成された実装。見つからない場合はリフレクションを使用する実装
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Snapshotter<T> of(Class<T> type) {
+        return (Snapshotter<T>) SNAPSHOTTERS.get(type);
+    }
+
+    /**
+     * 指定したクラスにコンパイル時に生成された実装があるかどうかを返します。
+     * @param type 対象のクラス
+     * @return 生成された実装を使用する場合はtrue
+     */
+    public static boolean isGenerated(Class<?> type) {
+        return !(SNAPSHOTTERS.get(type) instanceof ReflectiveSnapshotter);
+    }
+
+    private static Snapshotter<?> generated(Class<?> type) {
+        if (!type.isAnnotationPresent(History.Tracked.class)) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Class<?> c = type.getEnclosingClass(); c != null; c = c.getEnclosingClass()) {
+            name.insert(0, c.getSimpleName() + "_");
+        }
+        String packageName = type.getPackageName();
+        name.insert(0, packageName.isEmpty() ? "" : packageName + ".").append("_Snapshotter");
+        try {
+            Class<?> snapshotter = Class.forName(name.toString(), true, type.getClassLoader());
+            return (Snapshotter<?>) snapshotter.getConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
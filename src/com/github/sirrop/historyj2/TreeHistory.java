@@ -0,0 +1,288 @@
+package com.github.sirrop.historyj2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * A {@link History} that keeps every redo branch as a tree instead of discarding it.
+ * <p>
+ *     Adding an element after {@link #undo()} starts a new branch from the current element.
+ *     The previous redo entries stay in the tree and can be reached again with {@link #redoBranch(int)}.
+ *     Each element is a node that refers to its parent and children, so branches share their common
+ *     prefix and nothing is copied when a branch is started.
+ * </p>
+ * <p>
+ *     The indices of this history are those of the active path: from the root, following the most
+ *     recently added or visited child of each node. {@link #undo()} moves to the parent and
+ *     {@link #redo()} to the most recent child, both in constant time, and {@link #size()} is the
+ *     length of the active path.
+ * </p>
+ * <p>
+ *     The capacity limits the number of nodes in the whole tree. When an add exceeds it, the branch
+ *     that left the active path longest ago is pruned as a whole; when only the active path remains,
+ *     the root is evicted as in {@link RingHistory}.
+ * </p>
+ * @param <R> the type of elements
+ */
+public class TreeHistory<R> extends AbstractHistory<R> {
+    private static final class Node<R> {
+        final R record;
+        Node<R> parent;
+        /** Children in add order, or null if none */
+        List<Node<R>> children;
+        /** The child followed by redo, or null if none */
+        Node<R> active;
+        /** The depth from the first node ever added. Indices are relative to the root. */
+        final long depth;
+
+        Node(R record, Node<R> parent) {
+            this.record = record;
+            this.parent = parent;
+            depth = parent == null ? 0 : parent.depth + 1;
+        }
+    }
+
+    private int capacity;
+    private Node<R> root;
+    private Node<R> current;
+    /** The last node of the active path */
+    private Node<R> leaf;
+    private int nodeCount;
+    /** The roots of the branches off the active path, in the order they left it */
+    private final Set<Node<R>> inactiveBranches = new LinkedHashSet<>();
+
+    public TreeHistory(int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        capacity = initialCapacity;
+    }
+
+    public TreeHistory() {
+        this(100);
+    }
+
+    /**
+     * Adds an element as a new child of the current element. The previous redo entries
+     * are kept as an inactive branch.
+     * @param record element to be registered
+     */
+    @Override
+    public void add(R record) {
+        Objects.requireNonNull(record);
+        Node<R> node = new Node<>(record, current);
+        if (current == null) {
+            root = node;
+        } else {
+            if (current.active != null) {
+                inactiveBranches.add(current.active);
+            }
+            if (current.children == null) {
+                current.children = new ArrayList<>(2);
+            }
+            current.children.add(node);
+            current.active = node;
+        }
+        current = node;
+        leaf = node;
+        nodeCount++;
+        while (nodeCount > capacity) {
+            evict();
+        }
+        fireAdd();
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        current = null;
+        leaf = null;
+        nodeCount = 0;
+        inactiveBranches.clear();
+        fireClear();
+    }
+
+    @Override
+    public R currentRecord() {
+        return current == null ? null : current.record;
+    }
+
+    @Override
+    public int currentIndex() {
+        return current == null ? -1 : (int) (current.depth - root.depth);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     *     As with {@link LinkedHistory}, nodes beyond the new capacity are
+     *     pruned by the next {@link #add(Object)}.
+     * </p>
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity is negative or zero.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the length of the active path.
+     * @return the number of elements reachable by undo and redo
+     */
+    @Override
+    public int size() {
+        return leaf == null ? 0 : (int) (leaf.depth - root.depth + 1);
+    }
+
+    /**
+     * Returns a spliterator over the active path. The path is copied into an array
+     * by walking from its last node to the root.
+     * @return a spliterator over the elements of the active path
+     */
+    @Override
+    public Spliterator<R> spliterator() {
+        Object[] elements = new Object[size()];
+        Node<R> node = leaf;
+        for (int i = elements.length - 1; i >= 0; i--) {
+            elements[i] = node.record;
+            node = node.parent;
+        }
+        return Spliterators.spliterator(elements, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns the number of elements in the whole tree, including inactive branches.
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of children of the current element.
+     * @return the number of branches {@link #redoBranch(int)} can follow
+     */
+    public int getBranchCount() {
+        return current == null || current.children == null ? 0 : current.children.size();
+    }
+
+    @Override
+    public R undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Can't undo");
+        }
+        current = current.parent;
+        fireUndo();
+        return current.record;
+    }
+
+    /**
+     * Moves to the most recently added or visited child of the current element.
+     * @return the new current element
+     * @exception IllegalStateException if this history can't redo
+     */
+    @Override
+    public R redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Can't redo");
+        }
+        current = current.active;
+        fireRedo();
+        return current.record;
+    }
+
+    /**
+     * Moves to the specified child of the current element and makes its branch the active path.
+     * @param branch index of the child, in the order the children were added
+     * @return the new current element
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    public R redoBranch(int branch) {
+        if (branch < 0 || branch >= getBranchCount()) {
+            throw new IndexOutOfBoundsException(branch);
+        }
+        Node<R> child = current.children.get(branch);
+        if (child != current.active) {
+            inactiveBranches.add(current.active);
+            inactiveBranches.remove(child);
+            current.active = child;
+            leaf = child;
+            while (leaf.active != null) {
+                leaf = leaf.active;
+            }
+        }
+        current = child;
+        fireRedo();
+        return current.record;
+    }
+
+    /**
+     * Moves along the active path to the element at the specified index.
+     * @param index index of the element
+     * @return the element at the specified index
+     * @exception IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public R jumpTo(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        while (currentIndex() > index) {
+            current = current.parent;
+        }
+        while (currentIndex() < index) {
+            current = current.active;
+        }
+        fireJump();
+        return current.record;
+    }
+
+    /**
+     * Prunes the branch that left the active path longest ago, or the root if there is none.
+     */
+    private void evict() {
+        Iterator<Node<R>> branches = inactiveBranches.iterator();
+        if (branches.hasNext()) {
+            Node<R> branch = branches.next();
+            branch.parent.children.remove(branch);
+            branch.parent = null;
+            Deque<Node<R>> stack = new ArrayDeque<>();
+            stack.push(branch);
+            while (!stack.isEmpty()) {
+                Node<R> node = stack.pop();
+                inactiveBranches.remove(node);
+                if (node.children != null) {
+                    node.children.forEach(stack::push);
+                }
+                nodeCount--;
+                fireEvict();
+            }
+            return;
+        }
+        Node<R> next = root.active;
+        root.children = null;
+        root.active = null;
+        next.parent = null;
+        if (current == root) {
+            current = next;
+        }
+        root = next;
+        nodeCount--;
+        fireEvict();
+    }
+}
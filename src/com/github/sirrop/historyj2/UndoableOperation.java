@@ -0,0 +1,35 @@
+package com.github.sirrop.historyj2;
+
+/**
+ * A reversible change recorded by {@link OperationHistory}.
+ * <p>
+ *     Instead of a copy of the state, an operation holds only what it needs to
+ *     redo and undo itself, such as the inserted text and its position.
+ * </p>
+ */
+public interface UndoableOperation {
+    /**
+     * Performs this operation. Called by {@link OperationHistory#execute(UndoableOperation)}
+     * and when the operation is redone.
+     */
+    void apply();
+
+    /**
+     * Reverts the effect of {@link #apply()}.
+     */
+    void revert();
+
+    /**
+     * Returns an operation that has the effect of this operation followed by the specified one,
+     * or null if they can't be merged. {@link OperationHistory} calls this to replace
+     * adjacent operations, such as consecutive keystrokes, by a single element.
+     * <p>
+     *     The default implementation returns null.
+     * </p>
+     * @param next the operation performed right after this operation
+     * @return the merged operation or null
+     */
+    default UndoableOperation merge(UndoableOperation next) {
+        return null;
+    }
+}
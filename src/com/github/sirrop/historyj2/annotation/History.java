@@ -16,4 +16,30 @@ public final class History {
     @Target(ElementType.METHOD)
     public @interface Update {
     }
+
+    /**
+     * スナップショットを生成するクラスにつけるアノテーションです。
+     * コンパイル時に、フィールドを直接コピーする{@code <クラス名>_Snapshotter}クラスが同じパッケージに生成されます。
+     * 入れ子のクラスでは外側のクラス名を{@code _}でつないだ名前になります。
+     *
+     * <p>
+     *     staticフィールド、transientフィールド、{@link Exclude}をつけたフィールド、配列でないfinalフィールド
+     *     以外のすべてのインスタンスフィールドが対象になります。privateフィールドは同じクラスにある
+     *     get(is)メソッドとsetメソッドを通してコピーされます。配列は複製し、finalの配列には内容を書き戻します。
+     *     参照型のフィールドは参照だけをコピーするため、フィールドが指すオブジェクトの中の変更は元に戻りません。
+     *     配列でないfinalフィールドは書き戻せないため、変更できる型であればコンパイル時に警告されます。
+     * </p>
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    public @interface Tracked {
+    }
+
+    /**
+     * {@link Tracked}をつけたクラスで、スナップショットに含めないフィールドにつけるアノテーションです。
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    public @interface Exclude {
+    }
 }
@@ -0,0 +1,295 @@
+package com.github.sirrop.historyj2.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code @History.Tracked}をつけたクラスごとに、フィールドを直接コピーする
+ * {@code com.github.sirrop.historyj2.Snapshotter}の実装を生成します。
+ *
+ * <p>
+ *     生成されたクラスは{@code com.github.sirrop.historyj2.Snapshotters}によって実行時に読み込まれます。
+ *     コピーできないフィールド(アクセサのないprivateフィールドや、別のパッケージにある
+ *     publicでないフィールド)はコンパイルエラーとして報告されます。
+ *     finalの配列は参照を変えずに内容を書き戻します。それ以外のfinalフィールドは書き戻せないため、
+ *     変更できる型のフィールドには{@code @History.Exclude}をつけるよう警告します。
+ * </p>
+ */
+@SupportedAnnotationTypes(SnapshotProcessor.TRACKED)
+public class SnapshotProcessor extends AbstractProcessor {
+    static final String TRACKED = "com.github.sirrop.historyj2.annotation.History.Tracked";
+    static final String EXCLUDE = "com.github.sirrop.historyj2.annotation.History.Exclude";
+    static final String SUFFIX = "_Snapshotter";
+    /** 変更できないため、finalでも警告しない型です */
+    private static final Set<String> IMMUTABLE = Set.of("java.lang.String", "java.lang.Boolean", "java.lang.Byte",
+            "java.lang.Character", "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Float",
+            "java.lang.Double");
+
+    /**
+     * コピーするフィールドです。readとwriteは対象のオブジェクトを{@code target}とした式です。
+     * writeがnullのフィールドはfinalの配列で、readが返す配列に内容をコピーします。
+     */
+    private static final class Property {
+        final String type;
+        final String read;
+        final String write;
+        final boolean array;
+
+        Property(String type, String read, String write, boolean array) {
+            this.type = type;
+            this.read = read;
+            this.write = write;
+            this.array = array;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement tracked = processingEnv.getElementUtils().getTypeElement(TRACKED);
+        if (tracked == null) {
+            return false;
+        }
+        for (Element element: roundEnv.getElementsAnnotatedWith(tracked)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@History.Tracked can only be applied to classes.");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (isAccessible(type)) {
+                generate(type);
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error(type, "Tracked classes must not be private.");
+                return false;
+            }
+            if (e instanceof TypeElement && ((TypeElement) e).getNestingKind() == NestingKind.MEMBER
+                    && !e.getModifiers().contains(Modifier.STATIC)) {
+                error(type, "Tracked nested classes must be static.");
+                return false;
+            }
+            if (e instanceof TypeElement && ((TypeElement) e).getNestingKind().compareTo(NestingKind.MEMBER) > 0) {
+                error(type, "Tracked classes must be top level or member classes.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+        PackageElement pkg = elements.getPackageOf(type);
+        String packageName = pkg.getQualifiedName().toString();
+        String simpleName = flatName(type) + SUFFIX;
+        String targetType = types.erasure(type.asType()).toString();
+
+        List<Property> properties = new ArrayList<>();
+        boolean failed = false;
+        for (TypeElement c = type; c != null; c = superclassOf(c)) {
+            for (VariableElement field: ElementFilter.fieldsIn(c.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT) || isExcluded(field)) {
+                    continue;
+                }
+                if (modifiers.contains(Modifier.FINAL) && field.asType().getKind() != TypeKind.ARRAY) {
+                    if (isMutable(field.asType())) {
+                        warning(field, "Final field " + field.getSimpleName() + " can't be restored, so changes to "
+                                + "the object it refers to are never undone. Annotate it with @History.Exclude.");
+                    }
+                    continue;
+                }
+                Property property = propertyOf(type, c, field, packageName);
+                if (property == null) {
+                    failed = true;
+                } else {
+                    properties.add(property);
+                }
+            }
+        }
+        if (failed) {
+            return;
+        }
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())) {
+            write(out, packageName, simpleName, targetType, properties);
+        } catch (IOException e) {
+            error(type, "Can't generate " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private Property propertyOf(TypeElement tracked, TypeElement owner, VariableElement field, String packageName) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror fieldType = types.erasure(field.asType());
+        String name = field.getSimpleName().toString();
+        String type = fieldType.toString();
+        boolean array = fieldType.getKind() == TypeKind.ARRAY;
+        // スーパークラスのフィールドが隠されている場合に備えて、宣言したクラスにキャストします。
+        String target = owner == tracked ? "target" : "((" + types.erasure(owner.asType()) + ") target)";
+        boolean fixed = field.getModifiers().contains(Modifier.FINAL);
+        if (isAccessible(field, packageName)) {
+            return new Property(type, target + "." + name, fixed ? null : target + "." + name + " = %s", array);
+        }
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        ExecutableElement getter = null;
+        ExecutableElement setter = null;
+        for (ExecutableElement method: ElementFilter.methodsIn(owner.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.STATIC) || !isAccessible(method, packageName)) {
+                continue;
+            }
+            String methodName = method.getSimpleName().toString();
+            List<? extends VariableElement> parameters = method.getParameters();
+            if (parameters.isEmpty() && types.isSameType(types.erasure(method.getReturnType()), fieldType)
+                    && (methodName.equals("get" + capitalized)
+                    || methodName.equals("is" + capitalized) && fieldType.getKind() == TypeKind.BOOLEAN)) {
+                getter = method;
+            } else if (parameters.size() == 1 && methodName.equals("set" + capitalized)
+                    && types.isSameType(types.erasure(parameters.get(0).asType()), fieldType)) {
+                setter = method;
+            }
+        }
+        if (getter == null || setter == null && !fixed) {
+            error(field, "Field " + name + " is not accessible from the generated snapshotter. "
+                    + (fixed ? "Add a getter" : "Add a getter and a setter")
+                    + ", widen its access or annotate it with @History.Exclude.");
+            return null;
+        }
+        return new Property(type, target + "." + getter.getSimpleName() + "()",
+                fixed ? null : target + "." + setter.getSimpleName() + "(%s)", array);
+    }
+
+    private void write(PrintWriter out, String packageName, String simpleName, String targetType, List<Property> properties) {
+        if (!packageName.isEmpty()) {
+            out.println("package " + packageName + ";");
+            out.println();
+        }
+        out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+        out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+        out.println("public final class " + simpleName
+                + " implements com.github.sirrop.historyj2.Snapshotter<" + targetType + "> {");
+        out.println("    private static final class State {");
+        for (int i = 0; i < properties.size(); i++) {
+            out.println("        " + properties.get(i).type + " f" + i + ";");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    @Override");
+        out.println("    public Object capture(" + targetType + " target) {");
+        out.println("        State state = new State();");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            out.println("        state.f" + i + " = " + copyOf(property.read, property) + ";");
+        }
+        out.println("        return state;");
+        out.println("    }");
+        out.println();
+        out.println("    @Override");
+        out.println("    public void restore(" + targetType + " target, Object snapshot) {");
+        out.println("        State state = (State) snapshot;");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            if (property.write != null) {
+                out.println("        " + String.format(property.write, copyOf("state.f" + i, property)) + ";");
+                continue;
+            }
+            out.println("        " + property.type + " a" + i + " = " + property.read + ";");
+            out.println("        if (a" + i + " != null && state.f" + i + " != null) {");
+            out.println("            System.arraycopy(state.f" + i + ", 0, a" + i + ", 0, Math.min(a" + i
+                    + ".length, state.f" + i + ".length));");
+            out.println("        }");
+        }
+        out.println("    }");
+        out.println("}");
+    }
+
+    private static String copyOf(String expression, Property property) {
+        if (!property.array) {
+            return expression;
+        }
+        return "(" + expression + " == null ? null : (" + property.type + ") " + expression + ".clone())";
+    }
+
+    private boolean isMutable(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return false;
+        }
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        return !IMMUTABLE.contains(erased.toString());
+    }
+
+    private boolean isExcluded(VariableElement field) {
+        return field.getAnnotationMirrors().stream().anyMatch(mirror ->
+                ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(EXCLUDE));
+    }
+
+    private boolean isAccessible(Element member, String packageName) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        return processingEnv.getElementUtils().getPackageOf(member).getQualifiedName().contentEquals(packageName);
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement result = (TypeElement) ((DeclaredType) superclass).asElement();
+        return result.getQualifiedName().contentEquals("java.lang.Object") ? null : result;
+    }
+
+    static String flatName(TypeElement type) {
+        StringBuilder result = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+            result.insert(0, ((TypeElement) e).getSimpleName() + "_");
+        }
+        return result.toString();
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -1,8 +1,20 @@
 package com.github.sirrop.historyj2;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import java.io.Serializable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -124,4 +136,521 @@ public class BinaryHistoryTest {
         history.undo();
         assertEquals(index0, mock.getValue());
     }
+
+    @Test
+    public void keyframeIntervalTest() {
+        BinaryHistory history = new BinaryHistory(10);
+        history.setKeyframeInterval(4);
+        UpdateObjectMock mock = new UpdateObjectMock();
+        for (int i = 0; i < 25; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        for (int i = 23; i >= 15; i--) {
+            history.undo();
+            assertEquals(i, mock.getValue());
+        }
+        history.redo();
+        assertEquals(16, mock.getValue());
+        assertThrows(IllegalArgumentException.class, () -> history.setKeyframeInterval(0));
+    }
+
+    @Test
+    public void superclassFieldTest() {
+        BinaryHistory history = new BinaryHistory();
+        InheritedMock mock = new InheritedMock();
+        mock.setValue(1);
+        mock.setName("first");
+        history.add(mock);
+
+        mock.setValue(2);
+        mock.setName("second");
+        history.add(mock);
+
+        history.undo();
+        assertAll(
+                () -> assertEquals(1, mock.getValue()),
+                () -> assertEquals("first", mock.getName())
+        );
+    }
+
+    @Test
+    public void externalizableTest() {
+        BinaryHistory history = new BinaryHistory();
+        ExternalizableMock mock = new ExternalizableMock();
+        mock.setValue(1);
+        mock.setName("first");
+        history.add(mock);
+
+        mock.setValue(2);
+        mock.setName("second");
+        history.add(mock);
+
+        history.undo();
+        assertAll(
+                () -> assertEquals(1, mock.getValue()),
+                () -> assertEquals("first", mock.getName())
+        );
+    }
+
+    @Test
+    public void registeredCodecTest() {
+        SnapshotCodec<SerializableMock> codec = new SnapshotCodec<>() {
+            @Override
+            public void write(SerializableMock value, OutputStream out) throws IOException {
+                new DataOutputStream(out).writeInt(value.getValue());
+            }
+
+            @Override
+            public SerializableMock read(InputStream in) throws IOException {
+                SerializableMock result = new SerializableMock();
+                result.setValue(new DataInputStream(in).readInt());
+                return result;
+            }
+        };
+        BinaryHistory history = new BinaryHistory(100, new SnapshotCodecs().register(SerializableMock.class, codec));
+        SerializableMock mock = SerializableMock.createRandom();
+        history.add(mock);
+        int index0 = mock.getValue();
+
+        mock.setValue(1);
+        history.add(mock);
+
+        history.undo();
+        assertEquals(index0, mock.getValue());
+        history.redo();
+        assertEquals(1, mock.getValue());
+    }
+
+    @Test
+    public void byteBudgetTest() {
+        BinaryHistory history = new BinaryHistory();
+        SerializableMock mock = SerializableMock.createRandom();
+        history.add(mock);
+        long recordBytes = history.getRetainedBytes();
+        history.setByteBudget(recordBytes * 3);
+        for (int i = 0; i < 10; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        assertAll(
+                () -> assertEquals(3, history.size()),
+                () -> assertEquals(recordBytes * 3, history.getRetainedBytes()),
+                () -> assertEquals(100, history.getCapacity())
+        );
+
+        history.undo();
+        assertEquals(8, mock.getValue());
+        history.clear();
+        assertEquals(0, history.getRetainedBytes());
+    }
+
+    @Test
+    public void arenaTest() {
+        SnapshotArena arena = new SnapshotArena(256);
+        BinaryHistory history = new BinaryHistory(5);
+        history.setArena(arena);
+        history.setKeyframeInterval(3);
+        SerializableMock mock = SerializableMock.createRandom();
+        for (int i = 0; i < 20; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        assertEquals(history.getRetainedBytes(), arena.getAllocatedBytes());
+        for (int i = 18; i >= 15; i--) {
+            history.undo();
+            assertEquals(i, mock.getValue());
+        }
+        history.clear();
+        assertEquals(0, arena.getAllocatedBytes());
+    }
+
+    @Test
+    public void asyncCaptureTest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BinaryHistory history = new BinaryHistory(10);
+            history.setKeyframeInterval(3);
+            history.enableAsyncCapture(executor, 4, record -> {
+                SerializableMock copy = new SerializableMock();
+                copy.setValue(((SerializableMock) record).getValue());
+                return copy;
+            });
+            SerializableMock mock = SerializableMock.createRandom();
+            for (int i = 0; i < 30; i++) {
+                mock.setValue(i);
+                history.add(mock);
+            }
+            mock.setValue(-1);
+            for (int i = 28; i >= 20; i--) {
+                history.undo();
+                assertEquals(i, mock.getValue());
+            }
+            history.redo();
+            assertEquals(21, mock.getValue());
+            assertEquals(10, history.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncCaptureCopierFailureTest() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            BinaryHistory history = new BinaryHistory(10);
+            history.enableAsyncCapture(executor, 1, record -> {
+                SerializableMock mock = (SerializableMock) record;
+                if (mock.getValue() < 0) {
+                    throw new IllegalStateException("copy failed");
+                }
+                SerializableMock copy = new SerializableMock();
+                copy.setValue(mock.getValue());
+                return copy;
+            });
+            SerializableMock mock = SerializableMock.createRandom();
+            // 失敗した直列化の許可が返されていなければ、次の追加が止まる
+            CompletableFuture.runAsync(() -> {
+                mock.setValue(-1);
+                assertThrows(IllegalStateException.class, () -> history.add(mock));
+                assertThrows(IllegalStateException.class, () -> history.add(mock));
+                assertEquals(0, history.size());
+                for (int i = 0; i < 5; i++) {
+                    mock.setValue(i);
+                    history.add(mock);
+                }
+            }, executor).get(10, TimeUnit.SECONDS);
+            history.undo();
+            assertEquals(3, mock.getValue());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void jumpTest() {
+        BinaryHistory history = new BinaryHistory();
+        history.setKeyframeInterval(4);
+        SerializableMock mock = SerializableMock.createRandom();
+        for (int i = 0; i < 20; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        history.undo(13);
+        assertEquals(6, mock.getValue());
+        history.redo(10);
+        assertEquals(16, mock.getValue());
+        history.jumpTo(1);
+        assertEquals(1, mock.getValue());
+    }
+
+    @Test
+    public void compoundTest() {
+        BinaryHistory history = new BinaryHistory();
+        SerializableMock mock = SerializableMock.createRandom();
+        history.add(mock);
+        int index0 = mock.getValue();
+        try (var compound = history.batch()) {
+            for (int i = 0; i < 10; i++) {
+                mock.setValue(i);
+                history.add(mock);
+            }
+            assertEquals(1, history.size());
+        }
+        assertEquals(2, history.size());
+
+        history.undo();
+        assertEquals(index0, mock.getValue());
+        history.redo();
+        assertEquals(9, mock.getValue());
+        assertThrows(IllegalStateException.class, history::endCompound);
+    }
+
+    @Test
+    public void coalescingTest() {
+        BinaryHistory history = new BinaryHistory();
+        SerializableMock mock = SerializableMock.createRandom();
+        history.add(mock);
+        int index0 = mock.getValue();
+        HistoryMetrics metrics = new HistoryMetrics();
+        history.addListener(metrics);
+        history.setCoalescingWindow(Duration.ofHours(1));
+        for (int i = 0; i < 10; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        assertEquals(1, history.size());
+        // 置き換えられた追加も一回ずつ数えられる
+        assertEquals(10, metrics.getAddCount());
+
+        history.add(SerializableMock.createRandom());
+        mock.setValue(100);
+        history.add(mock);
+        assertEquals(3, history.size());
+        assertEquals(12, metrics.getAddCount());
+
+        history.undo(2);
+        assertEquals(9, mock.getValue());
+        assertNotEquals(index0, mock.getValue());
+    }
+
+    @Test
+    public void journalTest(@TempDir Path directory) throws IOException {
+        SerializableMock mock = new SerializableMock();
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            BinaryHistory history = new BinaryHistory(5);
+            history.setKeyframeInterval(3);
+            history.attachJournal(journal, mock);
+            for (int i = 0; i < 8; i++) {
+                mock.setValue(i);
+                history.add(mock);
+            }
+            history.undo(2);
+            assertEquals(5, mock.getValue());
+        }
+
+        SerializableMock restored = new SerializableMock();
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            BinaryHistory history = new BinaryHistory(5);
+            history.attachJournal(journal, restored);
+            assertEquals(5, history.size());
+            assertEquals(2, history.currentIndex());
+            assertEquals(5, restored.getValue());
+            history.undo(2);
+            assertEquals(3, restored.getValue());
+            history.redo(4);
+            assertEquals(7, restored.getValue());
+            assertThrows(IllegalStateException.class, () -> history.attachJournal(journal, restored));
+        }
+    }
+
+    @Test
+    public void compressionTest() {
+        BinaryHistory plain = new BinaryHistory();
+        BinaryHistory compressed = new BinaryHistory();
+        compressed.setCompressor(new DeflateCompressor(), 4);
+        InheritedMock mock = new InheritedMock();
+        for (int i = 0; i < 20; i++) {
+            mock.setValue(i);
+            mock.setName("name" + i);
+            plain.add(mock);
+            compressed.add(mock);
+        }
+        assertTrue(compressed.getRetainedBytes() * 2 < plain.getRetainedBytes());
+        assertTrue(((DeflateCompressor) compressed.getCompressor()).getDictionarySize() > 0);
+
+        compressed.undo(17);
+        assertEquals(2, mock.getValue());
+        assertEquals("name2", mock.getName());
+        compressed.undo(2);
+        assertEquals(0, mock.getValue());
+        compressed.redo(19);
+        assertEquals(19, mock.getValue());
+
+        BinaryHistory delta = new BinaryHistory();
+        delta.setKeyframeInterval(4);
+        delta.setArena(new SnapshotArena(1024));
+        delta.setCompressor(new DeflateCompressor(), 2);
+        for (int i = 0; i < 10; i++) {
+            mock.setValue(i);
+            delta.add(mock);
+        }
+        delta.jumpTo(5);
+        assertEquals(5, mock.getValue());
+        delta.undo(5);
+        assertEquals(0, mock.getValue());
+    }
+
+    @Test
+    public void decompressionFailureTest() {
+        AtomicBoolean broken = new AtomicBoolean();
+        BinaryHistory history = new BinaryHistory();
+        history.setCompressor(new SnapshotCompressor() {
+            @Override
+            public byte[] compress(byte[] data) {
+                return data.clone();
+            }
+
+            @Override
+            public byte[] decompress(byte[] data) throws IOException {
+                if (broken.get()) {
+                    throw new IOException("decompress failed");
+                }
+                return data.clone();
+            }
+        });
+        SerializableMock mock = new SerializableMock();
+        for (int i = 0; i < 5; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        broken.set(true);
+        // 展開の失敗も、他の復元の失敗と同じく原因をラップして投げられる
+        IllegalStateException undo = assertThrows(IllegalStateException.class, history::undo);
+        assertInstanceOf(IOException.class, undo.getCause());
+        IllegalStateException jump = assertThrows(IllegalStateException.class, () -> history.jumpTo(0));
+        assertInstanceOf(IOException.class, jump.getCause());
+        IllegalStateException redo = assertThrows(IllegalStateException.class, history::redo);
+        assertInstanceOf(IOException.class, redo.getCause());
+    }
+
+    @Test
+    public void snapshotStoreTest() {
+        SnapshotStore store = new SnapshotStore();
+        BinaryHistory history = new BinaryHistory(10);
+        BinaryHistory other = new BinaryHistory(10);
+        history.setSnapshotStore(store);
+        other.setSnapshotStore(store);
+        SerializableMock mock = new SerializableMock();
+        SerializableMock otherMock = new SerializableMock();
+        for (int i = 0; i < 10; i++) {
+            mock.setValue(i % 2);
+            history.add(mock);
+            otherMock.setValue(i % 2);
+            other.add(otherMock);
+        }
+        assertEquals(2, store.size());
+        assertEquals(20, store.getLookupCount());
+        assertEquals(18, store.getHitCount());
+        assertEquals(10, store.getDedupRatio(), 1e-9);
+
+        history.undo(3);
+        assertEquals(0, mock.getValue());
+        history.add(mock);
+        other.clear();
+        assertEquals(2, store.size());
+        assertEquals(store.getUniqueBytes() * 4, store.getLogicalBytes());
+
+        history.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.getUniqueBytes());
+        assertEquals(0, store.getLogicalBytes());
+    }
+
+    @Test
+    public void snapshotsTest() throws IOException, ClassNotFoundException {
+        BinaryHistory history = new BinaryHistory();
+        history.setKeyframeInterval(3);
+        SerializableMock mock = new SerializableMock();
+        for (int i = 0; i < 10; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        history.undo(3);
+        assertEquals(10, history.stream().filter(r -> r == mock).count());
+
+        List<ByteBuffer> snapshots = history.snapshots().parallel().collect(Collectors.toList());
+        assertEquals(10, snapshots.size());
+        for (int i = 0; i < snapshots.size(); i++) {
+            ByteBuffer buffer = snapshots.get(i);
+            assertTrue(buffer.isReadOnly());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                assertEquals(i, ((SerializableMock) in.readObject()).getValue());
+            }
+        }
+        assertEquals(6, mock.getValue());
+    }
+
+    static class ArrayMock implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        int[] values = new int[1];
+    }
+
+    @Test
+    public void stateCacheTest() {
+        BinaryHistory history = new BinaryHistory();
+        history.enableStateCache(4, 1, Runnable::run);
+        ArrayMock mock = new ArrayMock();
+        for (int i = 0; i < 10; i++) {
+            mock.values[0] = i;
+            history.add(mock);
+        }
+        history.undo();
+        assertEquals(8, mock.values[0]);
+        assertEquals(0, history.getStateCacheHitCount());
+        history.undo();
+        assertEquals(7, mock.values[0]);
+        // 書き戻した配列を変更しても、読み込み結果は共有されていないため次の復元に影響しない
+        mock.values[0] = -1;
+        history.redo();
+        assertEquals(8, mock.values[0]);
+        mock.values[0] = -1;
+        history.undo();
+        assertEquals(7, mock.values[0]);
+        history.jumpTo(2);
+        assertEquals(2, mock.values[0]);
+        assertAll(
+                () -> assertEquals(3, history.getStateCacheHitCount()),
+                () -> assertEquals(0.6, history.getStateCacheHitRate(), 1e-9)
+        );
+    }
+
+    @Test
+    public void rejectedPrefetchTest() {
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        BinaryHistory history = new BinaryHistory();
+        history.enableStateCache(4, 1, task -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException();
+            }
+            task.run();
+        });
+        ArrayMock mock = new ArrayMock();
+        for (int i = 0; i < 10; i++) {
+            mock.values[0] = i;
+            history.add(mock);
+        }
+        // 読み込みを受け付けなくても移動は呼び出したスレッドで行われる
+        history.undo();
+        history.undo();
+        assertEquals(7, mock.values[0]);
+        assertEquals(0, history.getStateCacheHitCount());
+
+        // 受け付けられなかった要素も、後で読み込まれる
+        rejecting.set(false);
+        history.redo();
+        assertEquals(8, mock.values[0]);
+        history.undo();
+        assertEquals(7, mock.values[0]);
+        assertEquals(1, history.getStateCacheHitCount());
+    }
+
+    @Test
+    public void asyncStateCacheTest() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BinaryHistory history = new BinaryHistory();
+            history.setKeyframeInterval(4);
+            history.setCompressor(new DeflateCompressor());
+            history.enableStateCache(8, 2, executor);
+            SerializableMock mock = new SerializableMock();
+            for (int i = 0; i < 20; i++) {
+                mock.setValue(i);
+                history.add(mock);
+            }
+            for (int round = 0; round < 5; round++) {
+                for (int i = 18; i >= 10; i--) {
+                    history.undo();
+                    assertEquals(i, mock.getValue());
+                }
+                for (int i = 11; i <= 19; i++) {
+                    history.redo();
+                    assertEquals(i, mock.getValue());
+                }
+            }
+            history.disableStateCache();
+            history.undo();
+            assertEquals(18, mock.getValue());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package com.github.sirrop.historyj2;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class ConcurrentHistoryTest {
+    @Test
+    public void initializeTest() {
+        History<Integer> history = new ConcurrentHistory<>();
+        assertAll("default config",
+                () -> assertFalse(history.canRedo()),
+                () -> assertFalse(history.canUndo()),
+                () -> assertEquals(history.getCapacity(), 100),
+                () -> assertEquals(history.currentIndex(), -1),
+                () -> assertNull(history.currentRecord())
+        );
+    }
+
+    @Test
+    public void undoAndRedoTest() {
+        History<Integer> history = new ConcurrentHistory<>(new LinkedHistory<>());
+        for (int i = 0; i < 100; i++) {
+            history.add(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            history.undo();
+        }
+        assertAll(
+                () -> assertEquals(94, history.currentIndex()),
+                () -> assertEquals(94, history.currentRecord()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertTrue(history.canRedo())
+        );
+        assertEquals(95, history.redoIfCan().orElseThrow());
+    }
+
+    @Test
+    public void concurrentUndoTest() throws InterruptedException {
+        History<Integer> history = new ConcurrentHistory<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            history.add(i);
+        }
+        AtomicInteger undone = new AtomicInteger();
+        AtomicBoolean torn = new AtomicBoolean();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                while (history.undoIfCan().isPresent()) {
+                    undone.incrementAndGet();
+                    Integer record = history.currentRecord();
+                    if (record != null && record > history.size()) {
+                        torn.set(true);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertAll(
+                () -> assertEquals(999, undone.get()),
+                () -> assertEquals(0, history.currentIndex()),
+                () -> assertFalse(torn.get())
+        );
+    }
+
+    /**
+     * A history outside this library, which relies on the default methods of {@link History}.
+     */
+    private static final class Forwarding<R> implements History<R> {
+        private final History<R> delegate = new RingHistory<>(10);
+
+        @Override
+        public void add(R record) {
+            delegate.add(record);
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+
+        @Override
+        public R currentRecord() {
+            return delegate.currentRecord();
+        }
+
+        @Override
+        public int currentIndex() {
+            return delegate.currentIndex();
+        }
+
+        @Override
+        public int getCapacity() {
+            return delegate.getCapacity();
+        }
+
+        @Override
+        public void setCapacity(int capacity) {
+            delegate.setCapacity(capacity);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public boolean canUndo() {
+            return delegate.canUndo();
+        }
+
+        @Override
+        public boolean canRedo() {
+            return delegate.canRedo();
+        }
+
+        @Override
+        public R undo() {
+            return delegate.undo();
+        }
+
+        @Override
+        public R redo() {
+            return delegate.redo();
+        }
+
+        @Override
+        public Optional<R> undoIfCan() {
+            return delegate.undoIfCan();
+        }
+
+        @Override
+        public Optional<R> redoIfCan() {
+            return delegate.redoIfCan();
+        }
+    }
+
+    @Test
+    public void defaultStreamTest() {
+        Forwarding<Integer> forwarding = new Forwarding<>();
+        assertEquals(List.of(), forwarding.stream().collect(Collectors.toList()));
+        for (int i = 0; i < 5; i++) {
+            forwarding.add(i);
+        }
+        forwarding.undo(2);
+        assertEquals(List.of(0, 1, 2, 3, 4), forwarding.stream().collect(Collectors.toList()));
+        assertEquals(2, forwarding.currentIndex());
+
+        History<Integer> history = new ConcurrentHistory<>(forwarding);
+        assertEquals(List.of(0, 1, 2, 3, 4), history.stream().parallel().collect(Collectors.toList()));
+        assertEquals(2, history.currentIndex());
+        assertEquals(2, history.currentRecord());
+    }
+}
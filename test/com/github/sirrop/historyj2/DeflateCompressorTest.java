@@ -0,0 +1,40 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeflateCompressorTest {
+    @Test
+    public void roundTripTest() throws IOException {
+        DeflateCompressor compressor = new DeflateCompressor();
+        byte[] data = "abcdefgh".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compressor.compress(data);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, compressor.decompress(compressed));
+
+        byte[] small = {1, 2, 3};
+        assertEquals(4, compressor.compress(small).length);
+        assertArrayEquals(small, compressor.decompress(compressor.compress(small)));
+        assertArrayEquals(new byte[0], compressor.decompress(compressor.compress(new byte[0])));
+    }
+
+    @Test
+    public void dictionaryTest() throws IOException {
+        byte[] a = "com.github.sirrop.historyj2.Mock value=1 name=first".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "com.github.sirrop.historyj2.Mock value=2 name=second".getBytes(StandardCharsets.UTF_8);
+        DeflateCompressor compressor = new DeflateCompressor();
+        DeflateCompressor trained = compressor.train(List.of(a, b));
+        assertTrue(trained.getDictionarySize() > 0);
+        assertSame(compressor, compressor.train(List.of()));
+
+        byte[] compressed = trained.compress(b);
+        assertTrue(compressed.length < compressor.compress(b).length);
+        assertArrayEquals(b, trained.decompress(compressed));
+        assertThrows(IOException.class, () -> compressor.decompress(compressed));
+    }
+}
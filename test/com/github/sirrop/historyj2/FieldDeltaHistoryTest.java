@@ -0,0 +1,84 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FieldDeltaHistoryTest {
+    static class Document {
+        private int revision;
+        private String title = "";
+        private int[] counts = new int[4];
+        private final int id = 7;
+    }
+
+    @Test
+    public void undoAndRedoTest() {
+        FieldDeltaHistory<Document> history = new FieldDeltaHistory<>();
+        Document document = new Document();
+        history.add(document);
+        for (int i = 1; i <= 5; i++) {
+            document.revision = i;
+            if (i % 2 == 0) {
+                document.title = "title" + i;
+            }
+            document.counts[i % 4]++;
+            history.add(document);
+        }
+        assertEquals(6, history.size());
+
+        history.undo(2);
+        assertAll(
+                () -> assertEquals(3, document.revision),
+                () -> assertEquals("title2", document.title),
+                () -> assertArrayEquals(new int[] {0, 1, 1, 1}, document.counts),
+                () -> assertEquals(7, document.id)
+        );
+        history.undo(3);
+        assertEquals(0, document.revision);
+        assertEquals("", document.title);
+        assertArrayEquals(new int[4], document.counts);
+
+        history.jumpTo(4);
+        assertEquals(4, document.revision);
+        assertEquals("title4", document.title);
+        assertArrayEquals(new int[] {1, 1, 1, 1}, document.counts);
+        history.redo();
+        assertEquals(5, document.revision);
+        assertArrayEquals(new int[] {1, 2, 1, 1}, document.counts);
+    }
+
+    @Test
+    public void multipleObjectTest() {
+        FieldDeltaHistory<Document> history = new FieldDeltaHistory<>(3);
+        Document a = new Document();
+        Document b = new Document();
+        history.add(a);
+        history.add(b);
+        a.revision = 1;
+        history.add(a);
+        b.revision = 1;
+        history.add(b);
+        assertEquals(3, history.size());
+
+        assertSame(a, history.undo());
+        assertEquals(1, a.revision);
+        assertEquals(0, b.revision);
+        assertSame(b, history.undo());
+        assertEquals(0, a.revision);
+        assertThrows(IllegalStateException.class, history::undo);
+
+        history.redo(2);
+        history.add(a);
+        assertEquals(1, a.revision);
+        assertEquals(1, b.revision);
+
+        history.clear();
+        a.revision = 2;
+        history.add(a);
+        a.revision = 3;
+        history.add(a);
+        history.undo();
+        assertEquals(2, a.revision);
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GroupHistoryTest {
+    @Test
+    public void undoRedoTest() {
+        GroupHistory history = new GroupHistory();
+        List<SerializableMock> mocks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            mocks.add(new SerializableMock());
+        }
+        history.add(mocks);
+        for (int i = 0; i < 5; i++) {
+            mocks.get(i).setValue(i + 1);
+        }
+        history.add(mocks);
+        mocks.get(0).setValue(10);
+        history.add(mocks);
+
+        assertEquals(mocks, history.undo());
+        assertAll(
+                () -> assertEquals(1, mocks.get(0).getValue()),
+                () -> assertEquals(5, mocks.get(4).getValue())
+        );
+        history.undo();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, mocks.get(i).getValue());
+        }
+        history.jumpTo(2);
+        assertEquals(10, mocks.get(0).getValue());
+        assertEquals(2, mocks.get(1).getValue());
+
+        // 2番目と3番目の要素の間では4つのオブジェクトが変更されていないため、最初のundoでだけ省略される
+        assertEquals(4, history.getSharedSnapshotCount());
+        assertEquals(4, history.getSkippedRestoreCount());
+    }
+
+    @Test
+    public void sequentialTest() {
+        GroupHistory history = new GroupHistory(10);
+        history.setPool(null);
+        SerializableMock a = new SerializableMock();
+        SerializableMock b = new SerializableMock();
+        history.add(List.of(a));
+        a.setValue(1);
+        b.setValue(1);
+        history.add(List.of(a, b));
+        history.undo();
+        assertEquals(0, a.getValue());
+        // 移動先の要素に含まれないオブジェクトは変更されない
+        assertEquals(1, b.getValue());
+        history.redo();
+        assertEquals(1, a.getValue());
+    }
+
+    static class Broken implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final Object lock = new Object();
+    }
+
+    @Test
+    public void failureTest() {
+        GroupHistory history = new GroupHistory();
+        history.setPool(new ForkJoinPool(2));
+        SerializableMock a = new SerializableMock();
+        assertThrows(NullPointerException.class, () -> history.add(Arrays.asList(a, null)));
+        assertThrows(IllegalArgumentException.class, () -> history.add(List.of(a, a)));
+        assertThrows(IllegalArgumentException.class, () -> history.add(List.of(a, new Broken())));
+        assertEquals(0, history.size());
+        history.add(List.of(a));
+        assertEquals(1, history.size());
+    }
+
+    static class ThreadMock implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        int value;
+        transient Thread updatedOn;
+
+        @com.github.sirrop.historyj2.annotation.History.Update
+        private void update(ThreadMock restored) {
+            value = restored.value;
+            updatedOn = Thread.currentThread();
+        }
+    }
+
+    @Test
+    public void callerThreadTest() {
+        GroupHistory history = new GroupHistory();
+        history.setPool(new ForkJoinPool(4));
+        List<ThreadMock> mocks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            mocks.add(new ThreadMock());
+        }
+        history.add(mocks);
+        mocks.forEach(mock -> mock.value = 1);
+        history.add(mocks);
+        history.undo();
+        for (ThreadMock mock: mocks) {
+            assertEquals(0, mock.value);
+            // 書き戻しは呼び出したスレッドで行われる
+            assertSame(Thread.currentThread(), mock.updatedOn);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistoryMetricsTest {
+    @Test
+    public void ringHistoryTest() {
+        RingHistory<Integer> history = new RingHistory<>(3);
+        HistoryMetrics metrics = new HistoryMetrics();
+        history.addListener(metrics);
+        for (int i = 0; i < 5; i++) {
+            history.add(i);
+        }
+        history.undo();
+        history.redo();
+        history.jumpTo(0);
+        history.add(5);
+        history.clear();
+
+        assertAll(
+                () -> assertEquals(6, metrics.getAddCount()),
+                () -> assertEquals(1, metrics.getUndoCount()),
+                () -> assertEquals(1, metrics.getRedoCount()),
+                () -> assertEquals(1, metrics.getJumpCount()),
+                // 容量を超えた2回だけが破棄として数えられ、redoの破棄と消去は含まれない
+                () -> assertEquals(2, metrics.getEvictionCount()),
+                () -> assertEquals(1, metrics.getClearCount()),
+                () -> assertEquals(0, metrics.getSize())
+        );
+    }
+
+    @Test
+    public void binaryHistoryTest() {
+        BinaryHistory history = new BinaryHistory(2);
+        HistoryMetrics metrics = new HistoryMetrics();
+        history.addListener(metrics);
+        SerializableMock mock = new SerializableMock();
+        for (int i = 0; i < 3; i++) {
+            mock.setValue(i);
+            history.add(mock);
+        }
+        history.undo();
+
+        assertAll(
+                () -> assertEquals(3, metrics.getAddCount()),
+                () -> assertEquals(1, metrics.getEvictionCount()),
+                () -> assertEquals(3, metrics.getSerializeNanos().getCount()),
+                () -> assertTrue(metrics.getSerializedBytes().getMax() > 0),
+                () -> assertEquals(1, metrics.getRestoreNanos().getCount()),
+                () -> assertEquals(2, metrics.getSize()),
+                () -> assertEquals(history.getRetainedBytes(), metrics.getRetainedBytes()),
+                () -> assertEquals(1, mock.getValue())
+        );
+    }
+
+    @Test
+    public void removeListenerTest() {
+        List<String> events = new ArrayList<>();
+        HistoryListener listener = new HistoryListener() {
+            @Override
+            public void onAdd(History<?> history) {
+                events.add("add");
+            }
+
+            @Override
+            public void onUndo(History<?> history) {
+                events.add("undo");
+            }
+        };
+        OperationHistory history = new OperationHistory();
+        history.addListener(listener);
+        history.execute(new UndoableOperation() {
+            @Override
+            public void apply() {
+            }
+
+            @Override
+            public void revert() {
+            }
+        });
+        history.undo();
+        history.removeListener(listener);
+        history.redo();
+        assertEquals(List.of("add", "undo"), events);
+    }
+
+    @Test
+    public void histogramTest() {
+        HistoryMetrics.Histogram histogram = new HistoryMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertAll(
+                () -> assertEquals(100, histogram.getCount()),
+                () -> assertEquals(5050, histogram.getSum()),
+                () -> assertEquals(100, histogram.getMax()),
+                () -> assertEquals(1, histogram.getBucketCount(1)),
+                () -> assertEquals(63, HistoryMetrics.Histogram.getUpperBound(6)),
+                () -> assertEquals(63, histogram.getPercentile(0.5)),
+                () -> assertEquals(100, histogram.getPercentile(0.99)),
+                () -> assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(2))
+        );
+    }
+}
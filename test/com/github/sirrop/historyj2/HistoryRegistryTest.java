@@ -0,0 +1,141 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistoryRegistryTest {
+    @Test
+    public void freezeTest() {
+        HistoryRegistry<String> registry = new HistoryRegistry<>(4, key -> {
+            BinaryHistory history = new BinaryHistory();
+            history.setKeyframeInterval(4);
+            return history;
+        });
+        SerializableMock mock = new SerializableMock();
+        for (int i = 0; i < 10; i++) {
+            mock.setValue(i);
+            registry.accept("a", history -> history.add(mock));
+        }
+        registry.accept("a", history -> history.undo(2));
+        registry.accept("b", history -> history.add(new SerializableMock()));
+        assertEquals(7, mock.getValue());
+
+        registry.setIdleTimeout(Duration.ZERO);
+        assertEquals(2, registry.freezeIdle());
+        HistoryRegistry.Statistics frozen = registry.getStatistics();
+        assertAll(
+                () -> assertEquals(2, frozen.getHistoryCount()),
+                () -> assertEquals(2, frozen.getFrozenHistoryCount()),
+                () -> assertEquals(11, frozen.getElementCount()),
+                () -> assertEquals(0, frozen.getRetainedBytes()),
+                () -> assertTrue(frozen.getFrozenBytes() > 0),
+                () -> assertEquals(2, frozen.getCreatedCount())
+        );
+
+        assertEquals(7, registry.<Integer>apply("a", History::currentIndex));
+        assertEquals(7, mock.getValue());
+        registry.accept("a", History::undo);
+        assertEquals(6, mock.getValue());
+        registry.accept("a", history -> history.jumpTo(9));
+        assertEquals(9, mock.getValue());
+        registry.accept("a", history -> history.jumpTo(0));
+        assertEquals(0, mock.getValue());
+
+        HistoryRegistry.Statistics thawed = registry.getStatistics();
+        assertAll(
+                () -> assertEquals(1, thawed.getFrozenHistoryCount()),
+                () -> assertEquals(1, thawed.getThawCount()),
+                () -> assertTrue(thawed.getRetainedBytes() > 0)
+        );
+    }
+
+    @Test
+    public void removeTest() {
+        HistoryRegistry<Integer> registry = new HistoryRegistry<>(1, key -> new BinaryHistory());
+        registry.accept(1, history -> history.add(new SerializableMock()));
+        assertTrue(registry.contains(1));
+        assertTrue(registry.remove(1));
+        assertFalse(registry.contains(1));
+        assertFalse(registry.remove(1));
+        assertEquals(0, registry.<Integer>apply(1, History::size));
+        assertEquals(2, registry.getStatistics().getCreatedCount());
+    }
+
+    @Test
+    public void failureTest() {
+        HistoryRegistry<Integer> registry = new HistoryRegistry<>(1, key -> {
+            if (key < 0) {
+                throw new IllegalArgumentException("negative key");
+            }
+            return new BinaryHistory();
+        });
+        // 作れなかった履歴は残らない
+        assertThrows(IllegalArgumentException.class, () -> registry.accept(-1, History::size));
+        assertFalse(registry.contains(-1));
+        assertEquals(0, registry.size());
+
+        SerializableMock mock = new SerializableMock();
+        registry.accept(1, history -> history.add(mock));
+        registry.accept(2, history -> history.add(mock));
+        registry.setIdleTimeout(Duration.ZERO);
+        registry.setFreezeCompressor(new SnapshotCompressor() {
+            @Override
+            public byte[] compress(byte[] data) {
+                throw new UncheckedIOException(new IOException("compress failed"));
+            }
+
+            @Override
+            public byte[] decompress(byte[] data) {
+                return data;
+            }
+        });
+        // 凍結に失敗した履歴はそのまま使え、他の履歴の凍結は続けられる
+        assertEquals(0, registry.freezeIdle());
+        assertEquals(1, registry.<Integer>apply(1, History::size));
+        registry.setFreezeCompressor(new DeflateCompressor());
+        assertEquals(2, registry.freezeIdle());
+        assertEquals(2, registry.size());
+        assertEquals(2, registry.getStatistics().getHistoryCount());
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        HistoryRegistry<Integer> registry = new HistoryRegistry<>(key -> new BinaryHistory(50));
+        registry.setIdleTimeout(Duration.ZERO);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    SerializableMock mock = new SerializableMock();
+                    for (int i = 0; i < 200; i++) {
+                        int key = thread * 10 + i % 10;
+                        mock.setValue(i);
+                        registry.accept(key, history -> history.add(mock));
+                        if (i % 50 == 0) {
+                            registry.freezeIdle();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(40, registry.size());
+        assertEquals(800, registry.getStatistics().getElementCount());
+    }
+}
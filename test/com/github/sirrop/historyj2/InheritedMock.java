@@ -0,0 +1,13 @@
+package com.github.sirrop.historyj2;
+
+public class InheritedMock extends SerializableMock {
+    private String name = "";
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
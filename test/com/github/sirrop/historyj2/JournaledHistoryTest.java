@@ -0,0 +1,186 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournaledHistoryTest {
+    private static final SnapshotCodec<Integer> CODEC = new SnapshotCodec<>() {
+        @Override
+        public void write(Integer value, OutputStream out) throws IOException {
+            new DataOutputStream(out).writeInt(value);
+        }
+
+        @Override
+        public Integer read(InputStream in) throws IOException {
+            return new DataInputStream(in).readInt();
+        }
+    };
+
+    @Test
+    public void reopenTest(@TempDir Path directory) throws IOException {
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 5);
+            for (int i = 0; i < 10; i++) {
+                history.add(i);
+            }
+            history.undo();
+            history.undo();
+            history.add(100);
+            assertEquals(4, history.size());
+            assertEquals(100, history.currentRecord());
+            history.undo();
+        }
+
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 5);
+            assertAll(
+                    () -> assertEquals(4, history.size()),
+                    () -> assertEquals(2, history.currentIndex()),
+                    () -> assertEquals(7, history.currentRecord()),
+                    () -> assertEquals(100, history.redo()),
+                    () -> assertEquals(5, history.jumpTo(0))
+            );
+            history.clear();
+            assertEquals(0, history.size());
+        }
+
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            assertEquals(0, new JournaledHistory<>(journal, CODEC).size());
+        }
+    }
+
+    @Test
+    public void smallerCapacityTest(@TempDir Path directory) throws IOException {
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 10);
+            for (int i = 0; i < 10; i++) {
+                history.add(i);
+            }
+            history.undo();
+        }
+
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 4);
+            assertAll(
+                    () -> assertEquals(4, history.size()),
+                    () -> assertEquals(4, history.getCapacity()),
+                    () -> assertEquals(2, history.currentIndex()),
+                    () -> assertEquals(8, history.currentRecord())
+            );
+        }
+        // 切り詰めはジャーナルに記録される
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 10);
+            assertEquals(4, history.size());
+            assertEquals(6, history.jumpTo(0));
+        }
+    }
+
+    @Test
+    public void rollTest(@TempDir Path directory) throws IOException {
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 3);
+            for (int i = 0; i < 100; i++) {
+                history.add(i);
+            }
+            history.undo();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 3);
+            assertEquals(3, history.size());
+            assertEquals(98, history.currentRecord());
+            assertEquals(97, history.undo());
+        }
+    }
+
+    @Test
+    public void interruptedRollTest(@TempDir Path directory) throws IOException {
+        Path first;
+        byte[] beforeRoll;
+        Path second;
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 3);
+            history.add(0);
+            history.add(1);
+            history.add(2);
+            try (Stream<Path> files = Files.list(directory)) {
+                first = files.findFirst().orElseThrow();
+            }
+            beforeRoll = Files.readAllBytes(first);
+            // 次の追加で新しいセグメントに書き写される
+            history.add(3);
+            assertFalse(Files.exists(first));
+            try (Stream<Path> files = Files.list(directory)) {
+                second = files.findFirst().orElseThrow();
+            }
+        }
+        byte[] afterRoll = Files.readAllBytes(second);
+
+        // 書き写しの途中、チェックポイントの直前で中断された場合は古いセグメントから復元される
+        for (int length: new int[] {30, 80}) {
+            Files.write(first, beforeRoll);
+            Files.write(second, Arrays.copyOf(afterRoll, length));
+            try (HistoryJournal journal = HistoryJournal.open(directory)) {
+                History<Integer> history = new JournaledHistory<>(journal, CODEC, 3);
+                assertAll(
+                        () -> assertEquals(3, history.size()),
+                        () -> assertEquals(2, history.currentRecord()),
+                        () -> assertEquals(0, history.jumpTo(0))
+                );
+            }
+        }
+
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 3);
+            history.jumpTo(2);
+            history.add(3);
+            history.add(4);
+            assertEquals(3, history.size());
+        }
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC, 3);
+            assertEquals(3, history.size());
+            assertEquals(4, history.currentRecord());
+            assertEquals(2, history.jumpTo(0));
+        }
+    }
+
+    @Test
+    public void tornWriteTest(@TempDir Path directory) throws IOException {
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC);
+            history.add(1);
+            history.add(2);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        byte[] data = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(data, data.length - 2));
+
+        try (HistoryJournal journal = HistoryJournal.open(directory)) {
+            History<Integer> history = new JournaledHistory<>(journal, CODEC);
+            assertEquals(1, history.size());
+            assertEquals(1, history.currentRecord());
+            history.add(3);
+            assertEquals(2, history.size());
+        }
+    }
+}
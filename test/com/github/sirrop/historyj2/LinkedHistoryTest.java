@@ -3,6 +3,10 @@ package com.github.sirrop.historyj2;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class LinkedHistoryTest {
     @Test
     public void initializeTest() {
@@ -82,4 +86,57 @@ public class LinkedHistoryTest {
         assertEquals(95, history.currentIndex());
         assertEquals(95, history.currentRecord());
     }
+
+    @Test
+    public void jumpTest() {
+        LinkedHistory<Integer> history = new LinkedHistory<>();
+        for (int i = 0; i < 10; i++) {
+            history.add(i);
+        }
+        assertEquals(2, history.undo(7));
+        assertEquals(7, history.redo(5));
+        assertEquals(0, history.jumpTo(0));
+        assertEquals(9, history.jumpTo(9));
+        assertThrows(IllegalStateException.class, () -> history.redo(1));
+
+        List<String> events = new ArrayList<>();
+        history.addListener(new HistoryListener() {
+            @Override
+            public void onUndo(History<?> h) {
+                events.add("undo");
+            }
+
+            @Override
+            public void onRedo(History<?> h) {
+                events.add("redo");
+            }
+
+            @Override
+            public void onJump(History<?> h) {
+                events.add("jump");
+            }
+        });
+        // 移動する距離に関係なくイベントは一度だけ発生する
+        assertEquals(3, history.jumpTo(3));
+        assertEquals(8, history.jumpTo(8));
+        assertEquals(8, history.jumpTo(8));
+        assertAll(
+                () -> assertEquals(List.of("jump", "jump", "jump"), events),
+                () -> assertEquals(8, history.currentIndex()),
+                () -> assertEquals(10, history.size()),
+                () -> assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), history.stream().collect(Collectors.toList()))
+        );
+        assertEquals(9, history.redo());
+    }
+
+    @Test
+    public void streamTest() {
+        LinkedHistory<Integer> history = new LinkedHistory<>();
+        for (int i = 0; i < 10; i++) {
+            history.add(i);
+        }
+        history.undo(4);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), history.stream().parallel().collect(Collectors.toList()));
+        assertEquals(5, history.currentIndex());
+    }
 }
@@ -0,0 +1,134 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OperationHistoryTest {
+    private static final class Text {
+        final StringBuilder content = new StringBuilder();
+        int applied;
+    }
+
+    /**
+     * Appends a string. Short consecutive appends are merged.
+     */
+    private static final class Append implements UndoableOperation {
+        final Text text;
+        final String value;
+
+        Append(Text text, String value) {
+            this.text = text;
+            this.value = value;
+        }
+
+        @Override
+        public void apply() {
+            text.content.append(value);
+            text.applied++;
+        }
+
+        @Override
+        public void revert() {
+            text.content.setLength(text.content.length() - value.length());
+        }
+
+        @Override
+        public UndoableOperation merge(UndoableOperation next) {
+            if (next instanceof Append && value.length() < 3 && !((Append) next).value.equals(" ")) {
+                return new Append(text, value + ((Append) next).value);
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void undoAndRedoTest() {
+        Text text = new Text();
+        OperationHistory history = new OperationHistory();
+        assertEquals(-1, history.currentIndex());
+        history.execute(new Append(text, "a"));
+        assertEquals(2, history.size());
+        assertTrue(history.canUndo());
+
+        history.execute(new Append(text, "b"));
+        history.execute(new Append(text, " "));
+        history.execute(new Append(text, "c"));
+        assertEquals("ab c", text.content.toString());
+        assertEquals(3, history.size());
+
+        history.undo();
+        assertEquals("ab", text.content.toString());
+        history.execute(new Append(text, "d"));
+        assertEquals(3, history.size());
+        assertEquals("abd", text.content.toString());
+
+        history.undo();
+        history.undo();
+        assertEquals("", text.content.toString());
+        assertFalse(history.canUndo());
+        assertThrows(IllegalStateException.class, history::undo);
+        history.redo();
+        assertEquals("ab", text.content.toString());
+    }
+
+    @Test
+    public void capacityTest() {
+        Text text = new Text();
+        OperationHistory history = new OperationHistory(3);
+        for (int i = 0; i < 5; i++) {
+            history.execute(new Append(text, " "));
+        }
+        assertEquals(3, history.size());
+        history.undo(2);
+        assertEquals(3, text.content.length());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void checkpointTest() {
+        Text text = new Text();
+        OperationHistory history = new OperationHistory();
+        history.setCheckpoints(10, () -> {
+            String saved = text.content.toString();
+            return () -> text.content.replace(0, text.content.length(), saved);
+        });
+        for (int i = 0; i < 50; i++) {
+            history.execute(new Append(text, " "));
+        }
+        history.jumpTo(0);
+        assertEquals(0, text.content.length());
+
+        text.applied = 0;
+        history.jumpTo(43);
+        assertEquals(43, text.content.length());
+        assertEquals(3, text.applied);
+
+        text.applied = 0;
+        history.jumpTo(48);
+        assertEquals(48, text.content.length());
+        assertEquals(0, text.applied);
+        history.jumpTo(21);
+        assertEquals(21, text.content.length());
+    }
+
+    @Test
+    public void mergeAfterCheckpointsDisabledTest() {
+        Text text = new Text();
+        OperationHistory history = new OperationHistory();
+        history.setCheckpoints(1, () -> {
+            String saved = text.content.toString();
+            return () -> text.content.replace(0, text.content.length(), saved);
+        });
+        history.execute(new Append(text, "a"));
+        history.setCheckpoints(1, null);
+        assertEquals(0, history.getCheckpointInterval());
+        history.execute(new Append(text, "b"));
+        assertEquals(2, history.size());
+
+        history.jumpTo(0);
+        assertEquals("", text.content.toString());
+        history.jumpTo(1);
+        assertEquals("ab", text.content.toString());
+    }
+}
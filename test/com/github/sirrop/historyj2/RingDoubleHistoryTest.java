@@ -0,0 +1,91 @@
+package com.github.sirrop.historyj2;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+import java.util.OptionalDouble;
+import java.util.Random;
+
+public class RingDoubleHistoryTest {
+    @Test
+    public void initializeTest() {
+        DoubleHistory history = new RingDoubleHistory();
+        assertAll("default config",
+                () -> assertFalse(history.canRedo()),
+                () -> assertFalse(history.canUndo()),
+                () -> assertEquals(history.getCapacity(), 100),
+                () -> assertEquals(history.currentIndex(), -1),
+                () -> assertThrows(NoSuchElementException.class, history::currentRecord),
+                () -> assertEquals(OptionalDouble.empty(), history.undoIfCan())
+        );
+    }
+
+    @Test
+    public void addTest() {
+        RingDoubleHistory history = new RingDoubleHistory();
+        for (int i = 0; i < 102; i++) {
+            history.add(i * 0.5);
+        }
+        assertAll(
+                () -> assertEquals(history.get(0), 1.0),
+                () -> assertFalse(history.canRedo()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertEquals(history.size(), 100),
+                () -> assertEquals(history.currentIndex(), 99),
+                () -> assertEquals(history.currentRecord(), 50.5)
+        );
+    }
+
+    @Test
+    public void undoAndRedoTest() {
+        DoubleHistory history = new RingDoubleHistory();
+        for (int i = 0; i < 100; i++) {
+            history.add(i * 0.5);
+        }
+        for (int i = 0; i < 5; i++) {
+            history.undo();
+        }
+        assertAll(
+                () -> assertEquals(94, history.currentIndex()),
+                () -> assertEquals(47.0, history.currentRecord()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertTrue(history.canRedo())
+        );
+        assertEquals(OptionalDouble.of(47.5), history.redoIfCan());
+        history.add(-1.5);
+        assertAll(
+                () -> assertEquals(97, history.size()),
+                () -> assertEquals(-1.5, history.currentRecord()),
+                () -> assertFalse(history.canRedo())
+        );
+    }
+
+    @Test
+    public void modelTest() {
+        // 同じ操作を行ったRingHistoryと結果が一致することで、配列の折り返しと拡大、縮小を確かめる
+        RingDoubleHistory history = new RingDoubleHistory(8);
+        RingHistory<Double> model = new RingHistory<>(8);
+        Random random = new Random(1);
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5) {
+                history.add(step * 0.5);
+                model.add(step * 0.5);
+            } else if (op < 7 && model.canUndo()) {
+                assertEquals((double) model.undo(), history.undo());
+            } else if (op < 9 && model.canRedo()) {
+                assertEquals((double) model.redo(), history.redo());
+            } else if (op == 9) {
+                int capacity = 1 + random.nextInt(16);
+                history.setCapacity(capacity);
+                model.setCapacity(capacity);
+            }
+            assertEquals(model.size(), history.size());
+            assertEquals(model.currentIndex(), history.currentIndex());
+            for (int i = 0; i < model.size(); i++) {
+                assertEquals((double) model.get(i), history.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.sirrop.historyj2;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+public class RingHistoryTest {
+    @Test
+    public void initializeTest() {
+        History<Integer> history = new RingHistory<>();
+        assertAll("default config",
+                () -> assertFalse(history.canRedo()),
+                () -> assertFalse(history.canUndo()),
+                () -> assertEquals(history.getCapacity(), 100),
+                () -> assertEquals(history.currentIndex(), -1),
+                () -> assertNull(history.currentRecord())
+        );
+
+        History<Integer> history1 = new RingHistory<>(200);
+        assertAll("specified config",
+                () -> assertFalse(history1.canRedo()),
+                () -> assertFalse(history1.canUndo()),
+                () -> assertEquals(history1.getCapacity(), 200),
+                () -> assertEquals(history1.currentIndex(), -1),
+                () -> assertNull(history1.currentRecord())
+        );
+    }
+
+    @Test
+    public void addTest() {
+        RingHistory<Integer> history = new RingHistory<>();
+        history.add(0);
+        assertAll(
+                () -> assertEquals(history.get(0), 0),
+                () -> assertFalse(history.canRedo()),
+                () -> assertFalse(history.canUndo()),
+                () -> assertEquals(history.currentIndex(), 0),
+                () -> assertEquals(history.currentRecord(), 0)
+        );
+
+        for (int i = 0; i < 100; i++) {
+            history.add(i + 1);
+        }
+
+        assertAll(
+                () -> assertEquals(history.get(0), 1),
+                () -> assertEquals(history.get(99), 100),
+                () -> assertFalse(history.canRedo()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertEquals(history.size(), 100),
+                () -> assertEquals(history.currentIndex(), 99),
+                () -> assertEquals(history.currentRecord(), 100)
+        );
+    }
+
+    @Test
+    public void undoAndRedoTest() {
+        RingHistory<Integer> history = new RingHistory<>(10);
+        for (int i = 0; i < 25; i++) {
+            history.add(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            history.undo();
+        }
+        assertAll(
+                () -> assertEquals(4, history.currentIndex()),
+                () -> assertEquals(19, history.currentRecord()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertTrue(history.canRedo())
+        );
+        assertEquals(20, history.redo());
+
+        history.add(100);
+        assertAll(
+                () -> assertEquals(7, history.size()),
+                () -> assertEquals(6, history.currentIndex()),
+                () -> assertEquals(100, history.currentRecord()),
+                () -> assertEquals(15, history.get(0)),
+                () -> assertFalse(history.canRedo())
+        );
+    }
+
+    @Test
+    public void setCapacityTest() {
+        RingHistory<Integer> history = new RingHistory<>(10);
+        for (int i = 0; i < 10; i++) {
+            history.add(i);
+        }
+        history.setCapacity(3);
+        history.add(10);
+        assertAll(
+                () -> assertEquals(3, history.size()),
+                () -> assertEquals(8, history.get(0)),
+                () -> assertEquals(10, history.currentRecord())
+        );
+        assertThrows(IllegalArgumentException.class, () -> history.setCapacity(0));
+    }
+
+    @Test
+    public void jumpTest() {
+        RingHistory<Integer> history = new RingHistory<>(10);
+        for (int i = 0; i < 15; i++) {
+            history.add(i);
+        }
+        assertEquals(7, history.undo(7));
+        assertEquals(2, history.currentIndex());
+        assertEquals(12, history.redo(5));
+        assertEquals(5, history.jumpTo(0));
+        assertAll(
+                () -> assertThrows(IllegalStateException.class, () -> history.undo(1)),
+                () -> assertThrows(IllegalStateException.class, () -> history.redo(10)),
+                () -> assertThrows(IllegalArgumentException.class, () -> history.undo(-1)),
+                () -> assertThrows(IndexOutOfBoundsException.class, () -> history.jumpTo(10))
+        );
+    }
+
+    @Test
+    public void streamTest() {
+        RingHistory<Integer> history = new RingHistory<>(1000);
+        for (int i = 0; i < 1500; i++) {
+            history.add(i);
+        }
+        Spliterator<Integer> spliterator = history.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.ORDERED));
+        assertEquals(1000, spliterator.estimateSize());
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertEquals(500, prefix.estimateSize());
+        assertEquals(500, spliterator.estimateSize());
+
+        assertEquals(history.stream().collect(Collectors.toList()),
+                history.stream().parallel().collect(Collectors.toList()));
+        assertEquals(LongStream.range(500, 1500).sum(), history.stream().parallel().mapToLong(i -> i).sum());
+        assertEquals(999, history.currentIndex());
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.sirrop.historyj2;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+import java.util.Random;
+
+public class RingIntHistoryTest {
+    @Test
+    public void initializeTest() {
+        IntHistory history = new RingIntHistory();
+        assertAll("default config",
+                () -> assertFalse(history.canRedo()),
+                () -> assertFalse(history.canUndo()),
+                () -> assertEquals(history.getCapacity(), 100),
+                () -> assertEquals(history.currentIndex(), -1),
+                () -> assertThrows(NoSuchElementException.class, history::currentRecord),
+                () -> assertEquals(OptionalInt.empty(), history.undoIfCan())
+        );
+    }
+
+    @Test
+    public void addTest() {
+        RingIntHistory history = new RingIntHistory();
+        for (int i = 0; i < 102; i++) {
+            history.add(i);
+        }
+        assertAll(
+                () -> assertEquals(history.get(0), 2),
+                () -> assertFalse(history.canRedo()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertEquals(history.size(), 100),
+                () -> assertEquals(history.currentIndex(), 99),
+                () -> assertEquals(history.currentRecord(), 101)
+        );
+    }
+
+    @Test
+    public void undoAndRedoTest() {
+        IntHistory history = new RingIntHistory();
+        for (int i = 0; i < 100; i++) {
+            history.add(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            history.undo();
+        }
+        assertAll(
+                () -> assertEquals(94, history.currentIndex()),
+                () -> assertEquals(94, history.currentRecord()),
+                () -> assertTrue(history.canUndo()),
+                () -> assertTrue(history.canRedo())
+        );
+        assertEquals(OptionalInt.of(95), history.redoIfCan());
+        history.add(-1);
+        assertAll(
+                () -> assertEquals(97, history.size()),
+                () -> assertEquals(-1, history.currentRecord()),
+                () -> assertFalse(history.canRedo())
+        );
+    }
+
+    @Test
+    public void modelTest() {
+        // 同じ操作を行ったRingHistoryと結果が一致することで、配列の折り返しと拡大、縮小を確かめる
+        RingIntHistory history = new RingIntHistory(8);
+        RingHistory<Integer> model = new RingHistory<>(8);
+        Random random = new Random(1);
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5) {
+                history.add(step);
+                model.add(step);
+            } else if (op < 7 && model.canUndo()) {
+                assertEquals((int) model.undo(), history.undo());
+            } else if (op < 9 && model.canRedo()) {
+                assertEquals((int) model.redo(), history.redo());
+            } else if (op == 9) {
+                int capacity = 1 + random.nextInt(16);
+                history.setCapacity(capacity);
+                model.setCapacity(capacity);
+            }
+            assertEquals(model.size(), history.size());
+            assertEquals(model.currentIndex(), history.currentIndex());
+            for (int i = 0; i < model.size(); i++) {
+                assertEquals((int) model.get(i), history.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializationCodecTest {
+    static class Node implements Serializable {
+        String name;
+        Node next;
+        transient int written;
+
+        Node(String name) {
+            this.name = name;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeInt(name.length());
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            written = in.readInt();
+        }
+    }
+
+    static class Broken implements Serializable {
+        Object value = new Object();
+    }
+
+    private static byte[] writeFresh(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(out);
+        stream.writeObject(value);
+        stream.flush();
+        return out.toByteArray();
+    }
+
+    private static byte[] write(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerializationCodec.INSTANCE.write(value, out);
+        return out.toByteArray();
+    }
+
+    private static Object read(byte[] data) throws IOException, ClassNotFoundException {
+        return SerializationCodec.INSTANCE.read(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void sameBytesTest() throws IOException, ClassNotFoundException {
+        Node a = new Node("a");
+        a.next = new Node("bb");
+        a.next.next = a;
+        List<Object> values = List.of(a, "text", new ArrayList<>(List.of(1, 2, 3)), a);
+        for (Object value: values) {
+            assertArrayEquals(writeFresh(value), write(value));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            Node restored = (Node) read(write(a));
+            assertEquals("bb", restored.next.name);
+            assertSame(restored, restored.next.next);
+            assertEquals(2, restored.next.written);
+            assertEquals(List.of(1, 2, 3), read(write(values.get(2))));
+        }
+        assertEquals("text", read(writeFresh("text")));
+    }
+
+    @Test
+    public void failureTest() throws IOException, ClassNotFoundException {
+        assertThrows(NotSerializableException.class, () -> write(new Broken()));
+        Node node = new Node("node");
+        assertArrayEquals(writeFresh(node), write(node));
+
+        byte[] data = write(node);
+        assertThrows(IOException.class, () -> read(new byte[] {1, 2, 3, 4}));
+        assertThrows(IOException.class, () -> read(Arrays.copyOf(data, data.length - 3)));
+        assertEquals("node", ((Node) read(data)).name);
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.sirrop.historyj2;
+
+import com.github.sirrop.historyj2.annotation.History;
+import com.github.sirrop.historyj2.processor.SnapshotProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotHistoryTest {
+    static class Plain {
+        private int value;
+        private int[] values = {0};
+        private final int[] fixed = {0};
+        private List<Integer> items = new ArrayList<>();
+        private final int id = 1;
+        private transient int cache;
+        @History.Exclude
+        private int excluded;
+    }
+
+    @Test
+    public void reflectiveTest() {
+        SnapshotHistory<Plain> history = new SnapshotHistory<>();
+        Plain plain = new Plain();
+        history.add(plain);
+        plain.value = 10;
+        plain.values[0] = 10;
+        plain.fixed[0] = 10;
+        plain.items.add(10);
+        plain.cache = 10;
+        plain.excluded = 10;
+        history.add(plain);
+
+        int[] fixed = plain.fixed;
+        assertSame(plain, history.undo());
+        assertAll(
+                () -> assertEquals(0, plain.value),
+                () -> assertEquals(0, plain.values[0]),
+                // finalの配列は同じ配列に書き戻される
+                () -> assertSame(fixed, plain.fixed),
+                () -> assertEquals(0, plain.fixed[0]),
+                // 参照型のフィールドは参照だけがコピーされるため、リストの中の変更は元に戻らない
+                () -> assertEquals(List.of(10), plain.items),
+                () -> assertEquals(1, plain.id),
+                () -> assertEquals(10, plain.cache),
+                () -> assertEquals(10, plain.excluded),
+                () -> assertFalse(Snapshotters.isGenerated(Plain.class))
+        );
+        history.redo();
+        assertEquals(10, plain.value);
+        assertEquals(10, plain.values[0]);
+        assertEquals(10, plain.fixed[0]);
+    }
+
+    @Test
+    public void generatedTest(@TempDir Path directory) throws Exception {
+        String source = "package sample;\n"
+                + "import com.github.sirrop.historyj2.annotation.History;\n"
+                + "@History.Tracked\n"
+                + "public class Counter extends Base implements java.util.function.IntSupplier, java.util.function.IntConsumer {\n"
+                + "    private int value;\n"
+                + "    final String name = \"counter\";\n"
+                + "    @History.Exclude int excluded;\n"
+                + "    final int[] counts = new int[1];\n"
+                + "    private final int[] hidden = new int[1];\n"
+                + "    public int[] getHidden() { return hidden; }\n"
+                + "    public int getValue() { return value; }\n"
+                + "    public void setValue(int value) { this.value = value; }\n"
+                + "    public int getAsInt() { return value + base; }\n"
+                + "    public void accept(int value) { this.value = value; base = value; counts[0] = value; hidden[0] = value; }\n"
+                + "    public int[] counts() { return counts; }\n"
+                + "}\n"
+                + "class Base { int base; }\n";
+        List<String> errors = compile(directory, "sample/Counter.java", source);
+        assertEquals(List.of(), errors);
+        assertTrue(Files.exists(directory.resolve("sample/Counter_Snapshotter.class")));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {directory.toUri().toURL()}, getClass().getClassLoader())) {
+            Class<?> type = loader.loadClass("sample.Counter");
+            Object counter = type.getConstructor().newInstance();
+            assertTrue(Snapshotters.isGenerated(type));
+
+            SnapshotHistory<Object> history = new SnapshotHistory<>();
+            history.add(counter);
+            ((IntConsumer) counter).accept(5);
+            history.add(counter);
+            ((IntConsumer) counter).accept(7);
+            history.add(counter);
+
+            history.undo(2);
+            assertEquals(0, ((IntSupplier) counter).getAsInt());
+            int[] counts = (int[]) type.getMethod("counts").invoke(counter);
+            int[] hidden = (int[]) type.getMethod("getHidden").invoke(counter);
+            assertEquals(0, counts[0]);
+            assertEquals(0, hidden[0]);
+            history.jumpTo(1);
+            assertEquals(10, ((IntSupplier) counter).getAsInt());
+            assertSame(counts, type.getMethod("counts").invoke(counter));
+            assertEquals(5, counts[0]);
+            assertEquals(5, hidden[0]);
+        }
+    }
+
+    @Test
+    public void finalFieldWarningTest(@TempDir Path directory) throws IOException {
+        String source = "package sample;\n"
+                + "@com.github.sirrop.historyj2.annotation.History.Tracked\n"
+                + "public class Tags {\n"
+                + "    final String name = \"tags\";\n"
+                + "    final int id = 1;\n"
+                + "    final java.util.List<String> tags = new java.util.ArrayList<>();\n"
+                + "    @com.github.sirrop.historyj2.annotation.History.Exclude\n"
+                + "    final java.util.List<String> excluded = new java.util.ArrayList<>();\n"
+                + "}\n";
+        List<String> warnings = compile(directory, "sample/Tags.java", source, Diagnostic.Kind.WARNING);
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).contains("tags"));
+    }
+
+    @Test
+    public void inaccessibleFieldTest(@TempDir Path directory) throws IOException {
+        String source = "package sample;\n"
+                + "@com.github.sirrop.historyj2.annotation.History.Tracked\n"
+                + "public class Hidden {\n"
+                + "    private int value;\n"
+                + "}\n";
+        List<String> errors = compile(directory, "sample/Hidden.java", source);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("value"));
+    }
+
+    private static List<String> compile(Path directory, String name, String source) throws IOException {
+        return compile(directory, name, source, Diagnostic.Kind.ERROR);
+    }
+
+    private static List<String> compile(Path directory, String name, String source, Diagnostic.Kind kind)
+            throws IOException {
+        Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+            String classPath = classPathOf(History.class) + File.pathSeparator + classPathOf(Snapshotter.class);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+                    List.of("-d", directory.toString(), "-cp", classPath),
+                    null, files.getJavaFileObjects(file));
+            task.setProcessors(List.of(new SnapshotProcessor()));
+            task.call();
+        }
+        return diagnostics.getDiagnostics().stream()
+                .filter(d -> d.getKind() == kind)
+                .map(d -> d.getMessage(null))
+                .collect(Collectors.toList());
+    }
+
+    private static String classPathOf(Class<?> type) {
+        try {
+            return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
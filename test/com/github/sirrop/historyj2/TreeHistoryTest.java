@@ -0,0 +1,104 @@
+package com.github.sirrop.historyj2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeHistoryTest {
+    @Test
+    public void branchTest() {
+        TreeHistory<String> history = new TreeHistory<>();
+        history.add("a");
+        history.add("b");
+        history.add("c");
+        history.undo(2);
+        history.add("x");
+        history.add("y");
+
+        assertAll(
+                () -> assertEquals(3, history.size()),
+                () -> assertEquals(5, history.getNodeCount()),
+                () -> assertFalse(history.canRedo())
+        );
+        assertEquals("a", history.undo(2));
+        assertEquals(2, history.getBranchCount());
+        // redoは最後に追加した枝をたどる
+        assertEquals("x", history.redo());
+        history.undo();
+        assertEquals("b", history.redoBranch(0));
+        assertAll(
+                () -> assertEquals(3, history.size()),
+                () -> assertEquals("c", history.redo()),
+                () -> assertEquals("a", history.jumpTo(0))
+        );
+        assertEquals("b", history.redo());
+        assertThrows(IndexOutOfBoundsException.class, () -> history.redoBranch(1));
+    }
+
+    @Test
+    public void pruneTest() {
+        TreeHistory<Integer> history = new TreeHistory<>(5);
+        history.add(0);
+        history.add(1);
+        history.add(2);
+        history.undo();
+        history.add(3);
+        history.undo();
+        history.add(4);
+
+        // 0 - 1 - {2, 3, 4}: 最も古くに使われなくなった枝(2)から削除される
+        history.add(5);
+        assertEquals(5, history.getNodeCount());
+        history.undo(2);
+        assertEquals(2, history.getBranchCount());
+        assertEquals(3, (int) history.redoBranch(0));
+
+        history.add(6);
+        // 4 - 5の枝はまとめて削除される
+        assertEquals(4, history.getNodeCount());
+        history.add(7);
+        assertEquals(5, history.getNodeCount());
+        // 枝がなくなると最も古い要素が削除される
+        history.add(8);
+        assertAll(
+                () -> assertEquals(5, history.getNodeCount()),
+                () -> assertEquals(5, history.size()),
+                () -> assertEquals(4, history.currentIndex()),
+                () -> assertEquals(1, (int) history.jumpTo(0)),
+                () -> assertFalse(history.canUndo())
+        );
+    }
+
+    @Test
+    public void clearTest() {
+        TreeHistory<Integer> history = new TreeHistory<>(1);
+        history.add(0);
+        history.add(1);
+        assertEquals(1, history.size());
+        assertEquals(1, (int) history.currentRecord());
+        history.clear();
+        assertAll(
+                () -> assertEquals(0, history.size()),
+                () -> assertEquals(-1, history.currentIndex()),
+                () -> assertNull(history.currentRecord()),
+                () -> assertEquals(0, history.getBranchCount())
+        );
+    }
+
+    @Test
+    public void streamTest() {
+        TreeHistory<String> history = new TreeHistory<>();
+        history.add("a");
+        history.add("b");
+        history.undo();
+        history.add("c");
+        history.add("d");
+        history.undo(2);
+        assertEquals(List.of("a", "c", "d"), history.stream().collect(Collectors.toList()));
+        history.redoBranch(0);
+        assertEquals(List.of("a", "b"), history.stream().parallel().collect(Collectors.toList()));
+    }
+}